@@ -0,0 +1,165 @@
+package ogallagher.marketsense.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ogallagher.marketsense.MarketSynth;
+import ogallagher.marketsense.MarketSynth.AmplitudeFormula;
+import ogallagher.marketsense.MarketSynth.SampleRate;
+import ogallagher.marketsense.MarketSynth.SampleSize;
+import ogallagher.marketsense.MarketSynth.TimbreFormula;
+import ogallagher.marketsense.SynthSound;
+
+/**
+ * <p>Throughput of {@link MarketSynth} over every combination of timbre formula, sample rate, and sample size,
+ * for market samples of 7 to 500 bars.</p>
+ * 
+ * <p>Run all with allocation rates using {@code java -jar target/benchmarks.jar MarketSynthBenchmark -prof gc}.
+ * The full matrix is large, so narrow it with parameters when comparing a change, for example
+ * {@code -p timbreFormula=HARMONIC_REDOI -p sampleRate=MEDIUM}. Batch scaling is measured over the
+ * {@link BatchPool#parallelism parallelism} of the batch pool, for example
+ * {@code MarketSynthBenchmark.synthesizeBatch -p parallelism=1,4}.</p>
+ * 
+ * @since 2026-10-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarketSynthBenchmark {
+	/**
+	 * Market samples per trial, cycled through by {@link #synthesize(Blackhole)}.
+	 */
+	private static final int MARKET_DATA_COUNT = 16;
+	
+	@Param
+	public TimbreFormula timbreFormula;
+	
+	@Param
+	public SampleRate sampleRate;
+	
+	@Param
+	public SampleSize sampleSize;
+	
+	@Param({"7", "30", "100", "500"})
+	public int noteCount;
+	
+	private MarketSynth marketSynth;
+	private float[][] marketData;
+	private int next = 0;
+	/**
+	 * Sound saved by {@link #save()}.
+	 */
+	private AudioInputStream sound;
+	
+	/**
+	 * Batch pool of {@link #synthesizeBatch(BatchPool, Blackhole)}, kept apart so its parameter only multiplies the
+	 * batch benchmark.
+	 */
+	@State(Scope.Benchmark)
+	public static class BatchPool {
+		@Param({"1", "2", "4", "8"})
+		public int parallelism;
+		
+		private ForkJoinPool pool;
+		
+		@Setup(Level.Trial)
+		public void setup() {
+			pool = new ForkJoinPool(parallelism);
+		}
+		
+		@TearDown(Level.Trial)
+		public void teardown() {
+			pool.shutdown();
+		}
+	}
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		marketSynth = new MarketSynth(sampleRate, sampleSize, timbreFormula, AmplitudeFormula.CONST);
+		
+		// same market data for every combination
+		Random random = new Random(noteCount);
+		marketData = new float[MARKET_DATA_COUNT][noteCount];
+		for (float[] data : marketData) {
+			for (int d=0; d<noteCount; d++) {
+				data[d] = random.nextFloat();
+			}
+		}
+		
+		sound = marketSynth.synthesize(marketData[0].clone(), false);
+	}
+	
+	/**
+	 * Render a sound with no cached timbres, as for a new sample. The sound is released, so its buffer is reused
+	 * from the pool as when preparing samples.
+	 */
+	@Benchmark
+	public void synthesize(Blackhole blackhole) {
+		marketSynth.getTimbreCache().clear();
+		
+		SynthSound sound = marketSynth.synthesizeSound(nextMarketData(), false);
+		blackhole.consume(sound.getStream());
+		sound.release();
+	}
+	
+	/**
+	 * Render a sound whose timbres are all cached, as for a replayed or exported sample.
+	 */
+	@Benchmark
+	public void synthesizeCached(Blackhole blackhole) {
+		SynthSound sound = marketSynth.synthesizeSound(marketData[0], false);
+		blackhole.consume(sound.getStream());
+		sound.release();
+	}
+	
+	/**
+	 * Render every market sample at once on the batch pool, as when preparing the samples of a session.
+	 */
+	@Benchmark
+	public void synthesizeBatch(BatchPool batchPool, Blackhole blackhole) {
+		marketSynth.setBatchPool(batchPool.pool);
+		
+		List<SynthSound> sounds = marketSynth.synthesizeBatch(Arrays.asList(marketData), false);
+		for (SynthSound sound : sounds) {
+			blackhole.consume(sound.getStream());
+			sound.release();
+		}
+	}
+	
+	/**
+	 * Write a rendered sound to a WAV file in the sounds dir.
+	 */
+	@Benchmark
+	public void save() {
+		marketSynth.save(sound, "benchmark");
+	}
+	
+	private float[] nextMarketData() {
+		float[] data = marketData[next];
+		next = (next + 1) % MARKET_DATA_COUNT;
+		return data;
+	}
+}
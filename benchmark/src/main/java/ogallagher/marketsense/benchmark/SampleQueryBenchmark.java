@@ -0,0 +1,188 @@
+package ogallagher.marketsense.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.Query;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ogallagher.marketsense.persistent.BarSeries;
+import ogallagher.marketsense.persistent.BarSeriesCache;
+import ogallagher.marketsense.persistent.BarStoreMigration;
+import ogallagher.marketsense.persistent.Security;
+import ogallagher.marketsense.persistent.SecurityId;
+import ogallagher.marketsense.persistent.SecurityType;
+import ogallagher.marketsense.persistent.TradeBar;
+import ogallagher.marketsense.persistent.TradeBarId;
+import ogallagher.twelvedata_client_java.TwelvedataInterface.BarInterval;
+
+/**
+ * <p>Latency and heap churn of reading the market data of a training session, being {@value #SESSION_SAMPLES}
+ * sample windows, from an in-memory database. Sound synthesis is not included.</p>
+ * 
+ * <p>{@link #entities()} is the original read path, which queries {@link TradeBar} entities and copies their
+ * closes. {@link #projection()} queries only the bar columns of each window into primitive arrays, and
+ * {@link #cached()} cuts each window from the shared series.</p>
+ * 
+ * <p>Run with {@code java -jar target/benchmarks.jar SampleQueryBenchmark -prof gc}.</p>
+ * 
+ * @since 2026-10-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleQueryBenchmark {
+	private static final int SESSION_SAMPLES = 30;
+	/**
+	 * Bars in the market universe.
+	 */
+	private static final int UNIVERSE_BARS = 2000;
+	
+	@Param({"7", "500"})
+	public int sampleSize;
+	
+	private EntityManagerFactory dbFactory;
+	private EntityManager dbManager;
+	private Security security;
+	private String barWidth = BarInterval.DY_1;
+	/**
+	 * Window ends of the session samples.
+	 */
+	private LocalDateTime[] ends = new LocalDateTime[SESSION_SAMPLES];
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		Map<String, String> properties = new HashMap<>();
+		properties.put("javax.persistence.jdbc.url", "jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+		properties.put("hibernate.hbm2ddl.auto", "create-drop");
+		properties.put("show_sql", "false");
+		properties.put("hibernate.format_sql", "false");
+		properties.put("hibernate.use_sql_comments", "false");
+		dbFactory = Persistence.createEntityManagerFactory(BarStoreMigration.PERSIST_UNIT_DEFAULT, properties);
+		dbManager = dbFactory.createEntityManager();
+		
+		security = new Security("BENCH", "XXX", SecurityType.STOCK);
+		LocalDateTime first = LocalDateTime.of(2010, 1, 1, 0, 0);
+		Random random = new Random(UNIVERSE_BARS);
+		
+		dbManager.getTransaction().begin();
+		dbManager.persist(security);
+		float close = 100;
+		for (int b=0; b<UNIVERSE_BARS; b++) {
+			close += random.nextFloat() - 0.5f;
+			dbManager.persist(new TradeBar(security, first.plusDays(b), barWidth, close, close, close, close));
+		}
+		dbManager.getTransaction().commit();
+		dbManager.clear();
+		
+		for (int s=0; s<SESSION_SAMPLES; s++) {
+			ends[s] = first.plusDays(sampleSize + random.nextInt(UNIVERSE_BARS - sampleSize));
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void teardown() {
+		dbManager.close();
+		dbFactory.close();
+	}
+	
+	/**
+	 * Read a session as before, hydrating and managing every trade bar entity in each window.
+	 */
+	@Benchmark
+	@SuppressWarnings("unchecked")
+	public float entities() {
+		dbManager.clear();
+		float sum = 0;
+		
+		for (LocalDateTime end : ends) {
+			Query query = dbManager.createQuery(
+				String.format(
+					"select t from %1$s t " +
+					"where t.%2$s = :securitySymbol and t.%3$s = :securityExchange and t.%4$s = :barWidth " +
+					"and t.%5$s <= :end " +
+					"order by t.%5$s desc",
+					TradeBar.DB_TABLE,
+					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_SYMBOL,
+					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_EXCHANGE,
+					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_WIDTH,
+					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_DATETIME
+				)
+			);
+			query.setMaxResults(sampleSize+1);
+			query.setParameter("end", end);
+			query.setParameter("securitySymbol", security.getSymbol());
+			query.setParameter("securityExchange", security.getExchange());
+			query.setParameter("barWidth", barWidth);
+			
+			List<TradeBar> bars = (List<TradeBar>) query.getResultList();
+			bars.sort(null);
+			
+			float[] closes = new float[bars.size()];
+			int b = 0;
+			for (TradeBar bar : bars) {
+				closes[b++] = bar.getClose();
+			}
+			sum += closes[0];
+		}
+		
+		return sum;
+	}
+	
+	/**
+	 * Read a session with one projection query per window.
+	 */
+	@Benchmark
+	public float projection() {
+		dbManager.clear();
+		float sum = 0;
+		
+		for (LocalDateTime end : ends) {
+			BarSeries window = BarSeries.loadWindow(dbManager, security, barWidth, null, end, sampleSize+1);
+			sum += window.getCloses(0, window.size())[0];
+		}
+		
+		return sum;
+	}
+	
+	/**
+	 * Read a session from the shared series, loaded once per session.
+	 */
+	@Benchmark
+	public float cached() {
+		dbManager.clear();
+		BarSeriesCache.clear();
+		float sum = 0;
+		
+		for (LocalDateTime end : ends) {
+			BarSeries series = BarSeriesCache.get(dbManager, security, barWidth);
+			int to = series.floor(end) + 1;
+			sum += series.getCloses(to - (sampleSize+1), to)[0];
+		}
+		
+		return sum;
+	}
+}
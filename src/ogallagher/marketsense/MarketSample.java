@@ -3,16 +3,19 @@ package ogallagher.marketsense;
 import java.awt.Color;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.persistence.EntityManager;
-import javax.persistence.Query;
 import javax.sound.sampled.AudioInputStream;
 
+import ogallagher.marketsense.persistent.BarRepository;
+import ogallagher.marketsense.persistent.BarSeries;
+import ogallagher.marketsense.persistent.BarSeriesCache;
+import ogallagher.marketsense.persistent.DbBarRepository;
 import ogallagher.marketsense.persistent.Security;
-import ogallagher.marketsense.persistent.SecurityId;
 import ogallagher.marketsense.persistent.TradeBar;
-import ogallagher.marketsense.persistent.TradeBarId;
+import ogallagher.temp_fx_logger.System;
 import ogallagher.twelvedata_client_java.TwelvedataInterface.BarInterval;
 
 /**
@@ -39,8 +42,23 @@ public class MarketSample {
 	private String barWidth;
 	private ArrayList<TradeBar> bars;
 	private TradeBar future;
+	/**
+	 * Number of bars in the prepared sample, not including the future.
+	 */
+	private int sampleSize = 0;
+	/**
+	 * Series from which the sample was cut, being either the cached universe or only the sample window.
+	 */
+	private BarSeries series = null;
+	/**
+	 * Index of the first sample bar in {@link #series}.
+	 */
+	private int seriesFrom;
 	
-	private AudioInputStream sound;
+	/**
+	 * Synthesized sound, which owns a pooled buffer until {@link #release() released}.
+	 */
+	private SynthSound sound;
 	/**
 	 * The last bar is the sample's _future_, whose value relative to the previous determines the future movement
 	 * for that sample.
@@ -64,6 +82,68 @@ public class MarketSample {
 		);
 	}
 	
+	/**
+	 * Analyze the future movement of a sample, given its last and future datapoints.
+	 * 
+	 * @param formula
+	 * @param last Last datapoint in the sample.
+	 * @param future Future datapoint following the sample.
+	 * @param deltaMax Maximum absolute difference between consecutive datapoints in the sample, used by 
+	 * {@link FutureMovementFormula#DELTA_SAMPLE_RANGE}.
+	 * 
+	 * @return Future movement, limited to {@code 0 .. 1}.
+	 */
+	public static double futureMovement(FutureMovementFormula formula, float last, float future, float deltaMax) {
+		double futureMovement = 0.5;
+		
+		switch (formula) {
+			case PCT_LAST_PX:
+				// constrain to -1 .. 1 proportion of last price, normalize to 0 .. 1
+				futureMovement = (((future - last) / last) + 1) / 2;
+				break;
+			
+			case DELTA_SAMPLE_RANGE:
+				// normalize future-last delta between -max and max
+				futureMovement = (future-last) / deltaMax;
+				
+				// map -1 .. 1 to 0 .. 1
+				futureMovement = (futureMovement+1) / 2;
+				break;
+		}
+		
+		// limit future movement to 0 .. 1
+		if (futureMovement > 1) {
+			futureMovement = 1;
+		}
+		else if (futureMovement < 0) {
+			futureMovement = 0;
+		}
+		
+		return futureMovement;
+	}
+	
+	/**
+	 * Analyze the future movement of a window of a bar series in constant time, for example to label many candidate
+	 * windows without preparing them.
+	 * 
+	 * @param formula
+	 * @param series
+	 * @param from Index of the first bar in the window.
+	 * @param barCount Number of bars in the window, <b>not</b> including the future bar at {@code from + barCount}.
+	 * 
+	 * @return Future movement, limited to {@code 0 .. 1}.
+	 */
+	public static double futureMovement(FutureMovementFormula formula, BarSeries series, int from, int barCount) {
+		int future = from + barCount;
+		
+		return futureMovement(
+			formula, 
+			series.getClose(future-1), 
+			series.getClose(future), 
+			series.getMaxCloseDelta(from, future)
+		);
+	}
+	
 	/**
 	 * @param security The security whose market data to fetch.
 	 * 
@@ -112,142 +192,172 @@ public class MarketSample {
 	}
 	
 	/**
-	 * @implNote This needs to be in descending order in order for the {@code endDate-barCount} version of the fetch to work, which
-	 * limits the result to only include the {@code barCount} first rows.
+	 * Fetch the required market data from the database and create the resulting sound and color. Market data is cut
+	 * from the shared {@link BarSeriesCache bar series} if enabled, or else only the sample window is queried.
+	 */
+	public void prepare(EntityManager dbManager, MarketSynth marketSynth) {
+		if (BarSeriesCache.isEnabled()) {
+			prepare(new DbBarRepository(dbManager), marketSynth);
+		}
+		else {
+			synthesize(cut(fetchWindow(dbManager)), marketSynth);
+		}
+	}
+	
+	/**
+	 * Query only the sample window and its future bar from the database, as a series of primitive columns.
 	 * 
-	 * @param dbManager Database entity manager.
+	 * @param dbManager
 	 * 
-	 * @return Database query to fetch a set of trade bars from the database, in 
-	 * <b>descending</b> chronological order.
+	 * @return Window series.
 	 */
-	private Query createQuery(EntityManager dbManager) {
-		String qstr; 
-		Query query;
-		
+	private BarSeries fetchWindow(EntityManager dbManager) {
 		if (start == null) {
-			qstr = 
-				"select t from %1$s t " + 
-				"where t.%2$s = :securitySymbol and t.%3$s = :securityExchange and t.%4$s = :barWidth " +
-				"and t.%5$s <= :end " +
-				"order by t.%5$s desc";
-			
-			query = dbManager.createQuery(
-				String.format(
-					qstr,
-					TradeBar.DB_TABLE,
-					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_SYMBOL,
-					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_EXCHANGE,
-					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_WIDTH,
-					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_DATETIME
-				)
-			);
-			
 			// note this includes one future bar
-			query.setMaxResults(barCount+1);
-			query.setParameter("end", end);
+			return BarSeries.loadWindow(dbManager, security, barWidth, null, end, barCount+1);
 		}
 		else {
-			qstr = 
-				"select t from %1$s t " + 
-				"where t.%2$s = :securitySymbol and t.%3$s = :securityExchange and t.%4$s = :barWidth " +
-				"and t.%5$s >= :start and t.%5$s <= :end " +
-				"order by t.%5$s desc";
+			// note this includes the next bar after end as the future, past any weekends, holidays, and closures
+			return BarSeries.loadRange(dbManager, security, barWidth, start, end, 1);
+		}
+	}
+	
+	/**
+	 * Cut the required market data from its series in the given repository and create the resulting sound and color.
+	 */
+	public void prepare(BarRepository barRepository, MarketSynth marketSynth) {
+		synthesize(cut(barRepository.getSeries(security, barWidth)), marketSynth);
+	}
+	
+	/**
+	 * Prepare many samples at once, cutting each from its series and synthesizing all sounds in parallel.
+	 * 
+	 * @param samples
+	 * @param barRepository
+	 * @param marketSynth
+	 * 
+	 * @see MarketSynth#synthesizeBatch(List, boolean)
+	 */
+	public static void prepareBatch(List<MarketSample> samples, BarRepository barRepository, MarketSynth marketSynth) {
+		// only synthesize sounds not already cached
+		List<MarketSample> uncached = new ArrayList<>(samples.size());
+		List<String> keys = new ArrayList<>(samples.size());
+		List<float[]> marketData = new ArrayList<>(samples.size());
+		for (MarketSample sample : samples) {
+			float[] data = sample.cut(barRepository.getSeries(sample.security, sample.barWidth));
+			sample.release();
 			
-			query = dbManager.createQuery(
-				String.format(
-					qstr,
-					TradeBar.DB_TABLE,
-					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_SYMBOL,
-					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_EXCHANGE,
-					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_WIDTH,
-					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_DATETIME
-				)
-			);
+			String key = sample.soundKey(data, marketSynth);
+			sample.sound = (key == null) ? null : SampleCache.get(key, marketSynth);
 			
-			query.setParameter("start", start);
-			// note this ideally includes one future bar, but will probably fall short due to weekends, 
-			// holidays, and closures
-			query.setParameter("end", BarInterval.offsetBars(end, barWidth, 1));
+			if (sample.sound == null) {
+				uncached.add(sample);
+				keys.add(key);
+				marketData.add(data);
+			}
 		}
 		
-		query.setParameter("securitySymbol", security.getSymbol());
-		query.setParameter("securityExchange", security.getExchange());
-		query.setParameter("barWidth", barWidth);
+		List<SynthSound> sounds = marketSynth.synthesizeBatch(marketData, true);
 		
-		return query;
+		for (int s=0; s<uncached.size(); s++) {
+			MarketSample sample = uncached.get(s);
+			sample.sound = sounds.get(s);
+			
+			String key = keys.get(s);
+			if (key != null) {
+				SampleCache.put(key, sample.sound);
+			}
+		}
 	}
-
+	
 	/**
-	 * Fetch the required market data from the database and create the resulting sound and color.
+	 * Cut the sample window from a bar series and analyze it.
+	 * 
+	 * @param series
+	 * 
+	 * @return Raw market datapoints, not including the future.
 	 */
-	@SuppressWarnings("unchecked")
-	public void prepare(EntityManager dbManager, MarketSynth marketSynth) {
-		// fetch market data from database
-		Query query = createQuery(dbManager);
-		
-		// set bars
+	private float[] cut(BarSeries series) {
 		bars.clear();
-		bars.addAll((List<TradeBar>) query.getResultList());
-		
-		// sort chronologically ascending
-		bars.sort(null);
-		
-		// set future
-		future = bars.remove(bars.size()-1);
-		
-		// analyze future movement
-		switch (futureMovementFormula) {
-			case PCT_LAST_PX:
-				float last = bars.get(bars.size()-1).getClose();
-				float future = this.future.getClose();
-				
-				// constrain to -1 .. 1 proportion of last price, normalize to 0 .. 1
-				futureMovement = (((future - last) / last) + 1) / 2;
-				break;
-				
-			case DELTA_SAMPLE_RANGE:
-				float deltaMax = 0;
-				
-				float a = bars.get(0).getClose();
-				for (int i=1; i<bars.size(); i++) {
-					float b = bars.get(i).getClose();
-					float d = Math.abs(b-a);
-					
-					if (d > deltaMax) {
-						deltaMax = d;
-					}
-					
-					a = b;
-				}
-				
-				// normalize future-last delta between -max and max
-				futureMovement = (this.future.getClose()-a) / deltaMax;
-				
-				// map -1 .. 1 to 0 .. 1
-				futureMovement = (futureMovement+1) / 2;
-				break;
-		}
+		future = null;
+		this.series = series;
 		
-		// limit future movement to 0 .. 1
-		if (futureMovement > 1) {
-			futureMovement = 1;
+		// series index range, which includes the future bar
+		int to;
+		if (start == null) {
+			to = series.floor(end) + 1;
+			seriesFrom = Math.max(0, to - (barCount+1));
 		}
-		else if (futureMovement < 0) {
-			futureMovement = 0;
+		else {
+			seriesFrom = series.ceiling(start);
+			// the future is the next bar after end, however far away
+			to = series.floor(end) + 2;
+			
+			if (to > series.size()) {
+				to = series.size();
+				System.out.println("WARNING no bar after " + end + " for future of " + this + "; using last sample bar");
+			}
 		}
 		
-		// extract raw market datapoints
-		float[] marketData = new float[bars.size()];
-		int b = 0;
-		for (TradeBar bar : bars) {
-			marketData[b++] = bar.getClose();
-		}
+		return analyze(series.getCloses(seriesFrom, to), series.getMaxCloseDelta(seriesFrom, to-1));
+	}
+	
+	/**
+	 * Set the future, future movement, and color of the sample from its market data.
+	 * 
+	 * @param marketData Raw market datapoints, with the future last.
+	 * @param deltaMax Maximum absolute difference between consecutive datapoints, not including the future.
+	 * 
+	 * @return Raw market datapoints, not including the future.
+	 */
+	private float[] analyze(float[] marketData, float deltaMax) {
+		// set future
+		float futureClose = marketData[marketData.length-1];
+		marketData = Arrays.copyOf(marketData, marketData.length-1);
+		sampleSize = marketData.length;
 		
-		// create sound
-		sound = marketSynth.synthesize(marketData, true);
+		futureMovement = futureMovement(futureMovementFormula, marketData[marketData.length-1], futureClose, deltaMax);
 		
 		// create color
 		color = valueToColor(futureMovement, COLOR_LOW, COLOR_HIGH);
+		
+		return marketData;
+	}
+	
+	/**
+	 * Create the sound of the sample, or copy it from the {@link SampleCache} if the same window was already
+	 * synthesized with the same settings.
+	 * 
+	 * @param marketData Raw market datapoints, not including the future.
+	 * @param marketSynth
+	 */
+	private void synthesize(float[] marketData, MarketSynth marketSynth) {
+		release();
+		
+		String key = soundKey(marketData, marketSynth);
+		sound = (key == null) ? null : SampleCache.get(key, marketSynth);
+		
+		if (sound == null) {
+			sound = marketSynth.synthesizeSound(marketData, true);
+			
+			if (key != null) {
+				SampleCache.put(key, sound);
+			}
+		}
+	}
+	
+	/**
+	 * @param marketData Raw market datapoints of the cut window, not including the future.
+	 * @param marketSynth
+	 * 
+	 * @return Sample cache key of the sound of the cut window, or {@code null} if the sound should not be cached.
+	 */
+	private String soundKey(float[] marketData, MarketSynth marketSynth) {
+		if (!SampleCache.isEnabled() || marketSynth.isStreaming() || sampleSize == 0) {
+			return null;
+		}
+		
+		return SampleCache.key(security, barWidth, series.getEpoch(seriesFrom), sampleSize, marketData, marketSynth);
 	}
 	
 	/**
@@ -265,7 +375,17 @@ public class MarketSample {
 	}
 	
 	public AudioInputStream getSound() {
-		return sound;
+		return sound == null ? null : sound.getStream();
+	}
+	
+	/**
+	 * Return the sound buffer to the synth's pool, once this sample is discarded. After this, {@link #getSound()}
+	 * must not be used.
+	 */
+	public void release() {
+		if (sound != null) {
+			sound.release();
+		}
 	}
 	
 	/**
@@ -276,6 +396,9 @@ public class MarketSample {
 	}
 	
 	public TradeBar getFuture() {
+		if (future == null && series != null) {
+			future = series.getTradeBar(seriesFrom + sampleSize);
+		}
 		return future;
 	}
 	
@@ -283,7 +406,32 @@ public class MarketSample {
 		return color;
 	}
 	
+	/**
+	 * @return Compact record of the prepared sample, or {@code null} if not yet prepared.
+	 */
+	public SampleRecord toRecord() {
+		if (series == null || sampleSize == 0) {
+			return null;
+		}
+		
+		return new SampleRecord(
+			security, barWidth, 
+			series.getEpoch(seriesFrom), 
+			series.getCloses(seriesFrom, seriesFrom + sampleSize), 
+			series.getClose(seriesFrom + sampleSize), 
+			(float) futureMovement
+		);
+	}
+	
+	/**
+	 * @return Sample trade bars, which are only created on first call.
+	 */
 	public List<TradeBar> getBars() {
+		if (bars.isEmpty() && series != null) {
+			for (int i=0; i<sampleSize; i++) {
+				bars.add(series.getTradeBar(seriesFrom + i));
+			}
+		}
 		return bars;
 	}
 	
@@ -310,7 +458,7 @@ public class MarketSample {
 			.append('_')
 			.append(barWidth)
 			.append('_')
-			.append(bars.size())
+			.append(sampleSize)
 			.toString();
 	}
 	
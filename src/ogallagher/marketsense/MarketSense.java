@@ -15,6 +15,7 @@ import java.text.DecimalFormat;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -22,8 +23,11 @@ import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.Persistence;
 import javax.sound.sampled.AudioInputStream;
@@ -81,7 +85,12 @@ import ogallagher.twelvedata_client_java.TwelvedataInterface.BarInterval;
 import ogallagher.twelvedata_client_java.TwelvedataInterface.Failure;
 import ogallagher.twelvedata_client_java.TwelvedataInterface.SecuritySet;
 import ogallagher.marketsense.PerformanceSample.PerformancePoint;
+import ogallagher.marketsense.persistent.BarRepository;
+import ogallagher.marketsense.persistent.DbAccess;
+import ogallagher.marketsense.persistent.DbBarRepository;
+import ogallagher.marketsense.persistent.FileBarRepository;
 import ogallagher.marketsense.persistent.Person;
+import ogallagher.marketsense.persistent.QueryTemplates;
 import ogallagher.marketsense.persistent.Security;
 import ogallagher.marketsense.persistent.SecurityId;
 import ogallagher.marketsense.persistent.SecurityType;
@@ -95,6 +104,7 @@ import ogallagher.marketsense.test.TestDatetimeUtils;
 import ogallagher.marketsense.test.TestMarketSynth;
 import ogallagher.marketsense.util.HasCallback;
 import ogallagher.marketsense.util.PointFilter;
+import ogallagher.marketsense.util.TokenBucket;
 import ogallagher.marketsense.widgets.AccountComboBox;
 import ogallagher.marketsense.widgets.BarWidthComboBox;
 import ogallagher.marketsense.widgets.MultiDatePicker;
@@ -187,6 +197,46 @@ public class MarketSense {
 	 */
 	public static final String PROP_SAVE_SOUNDS = "save_sounds";
 	
+	/**
+	 * Program properties key for the directory of a {@link FileBarRepository bar store} to use instead of the
+	 * database for trade bars. Relative paths are resolved against the {@link #PARENT_DIR program parent dir}.
+	 */
+	public static final String PROP_BAR_STORE_DIR = "bar_store_dir";
+	
+	/**
+	 * Program properties key for the memory budget of the {@link SampleCache}, in megabytes, or {@code 0} to disable it.
+	 */
+	public static final String PROP_SAMPLE_CACHE_MB = "sample_cache_mb";
+	/**
+	 * Program properties key for whether the {@link SampleCache} also keeps sounds in the sounds dir.
+	 */
+	public static final String PROP_SAMPLE_CACHE_DISK = "sample_cache_disk";
+	
+	/**
+	 * Program properties key for whether Hibernate counts query statistics, such as the query plan cache hits in the
+	 * {@link QueryTemplates} summary logged at the start of a training session. Off by default, since counting has a
+	 * cost on every query.
+	 */
+	public static final String PROP_QUERY_STATISTICS = "query_statistics";
+	
+	/**
+	 * Program properties key for the market data request limit of the twelvedata api plan, in requests per minute.
+	 */
+	public static final String PROP_MARKET_CALLS_PER_MINUTE = "market_calls_per_minute";
+	/**
+	 * Program properties key for comma separated symbols whose market universes are collected in the background on 
+	 * startup, by the {@link #universeCollector}.
+	 */
+	public static final String PROP_COLLECT_SYMBOLS = "collect_symbols";
+	/**
+	 * Program properties key for comma separated tradebar widths of the collected market universes.
+	 */
+	public static final String PROP_COLLECT_BAR_WIDTHS = "collect_bar_widths";
+	/**
+	 * Program properties key for the lookback of the collected market universes, in months.
+	 */
+	public static final String PROP_COLLECT_LOOKBACK_MONTHS = "collect_lookback_months";
+	
 	/**
 	 * Program properties key for the default training session asset symbol.
 	 */
@@ -214,9 +264,30 @@ public class MarketSense {
 	private static TwelvedataClient tdclient = null;
 	
 	/**
-	 * The program database/persistence entity manager.
+	 * The program database, giving each unit of work its own entity manager.
+	 */
+	public static DbAccess dbAccess = null;
+	
+	/**
+	 * Storage of trade bars for training sessions, either the database or a {@link #PROP_BAR_STORE_DIR bar store}.
 	 */
-	public static EntityManager dbManager = null;
+	private static BarRepository barRepository = null;
+	
+	/**
+	 * Rate limited fetcher of market universes, for training sessions and background collection.
+	 */
+	private static UniverseCollector universeCollector = null;
+	
+	/**
+	 * Worker where training sessions and their samples are prepared, off the javafx thread. A single thread, so
+	 * samples are prepared in the order requested.
+	 */
+	private static final ExecutorService sampleExecutor = Executors.newSingleThreadExecutor((runnable) -> {
+		Thread worker = new Thread(runnable, "sample-pipeline");
+		// do not keep the program open
+		worker.setDaemon(true);
+		return worker;
+	});
 	
 	/**
 	 * The current active account.
@@ -477,10 +548,55 @@ public class MarketSense {
 			// host services
 			hostServices = getHostServices();
 			
-			// connect db entity manager
-			dbManager = Persistence
-			.createEntityManagerFactory(properties.getProperty(PROP_PERSIST_UNIT))
-			.createEntityManager();
+			// connect db entity manager factory
+			dbAccess = new DbAccess(Persistence.createEntityManagerFactory(properties.getProperty(PROP_PERSIST_UNIT)));
+			// optionally count query plan cache hits of query templates
+			QueryTemplates.setStatisticsEnabled(
+				dbAccess.getFactory(), 
+				Boolean.valueOf(properties.getProperty(PROP_QUERY_STATISTICS, "false"))
+			);
+			
+			// select trade bar storage
+			String barStoreDir = properties.getProperty(PROP_BAR_STORE_DIR, "");
+			if (barStoreDir.isEmpty()) {
+				barRepository = new DbBarRepository(dbAccess);
+			}
+			else {
+				File barStore = new File(barStoreDir);
+				if (!barStore.isAbsolute()) {
+					barStore = new File(PARENT_DIR, barStoreDir);
+				}
+				
+				barRepository = new FileBarRepository(barStore);
+				System.out.println("INFO using bar store at " + barStore.getPath());
+			}
+			
+			// share the market data request limit between sessions and background collection
+			universeCollector = new UniverseCollector(
+				barRepository, tdclient, dbAccess,
+				new TokenBucket(1, Double.parseDouble(properties.getProperty(
+					PROP_MARKET_CALLS_PER_MINUTE, 
+					Integer.toString(UniverseCollector.CALLS_PER_MINUTE_DEFAULT)
+				))),
+				UniverseCollector.WORKERS_DEFAULT
+			);
+			String collectSymbols = properties.getProperty(PROP_COLLECT_SYMBOLS, "").trim();
+			if (!collectSymbols.isEmpty()) {
+				universeCollector.collect(
+					Arrays.asList(collectSymbols.split("\\s*,\\s*")),
+					Arrays.asList(properties.getProperty(PROP_COLLECT_BAR_WIDTHS, BarInterval.DY_1).trim().split("\\s*,\\s*")),
+					Integer.parseInt(properties.getProperty(PROP_COLLECT_LOOKBACK_MONTHS, "12"))
+				);
+			}
+			
+			// configure prepared sample cache
+			long sampleCacheMb = Long.parseLong(properties.getProperty(
+				PROP_SAMPLE_CACHE_MB, 
+				Long.toString(SampleCache.MAX_BYTES_DEFAULT >> 20)
+			));
+			SampleCache.setEnabled(sampleCacheMb > 0);
+			SampleCache.setMaxBytes(sampleCacheMb << 20);
+			SampleCache.setDiskEnabled(Boolean.valueOf(properties.getProperty(PROP_SAMPLE_CACHE_DISK, "false")));
 			
 			// run tests
 			if (runTests) {
@@ -686,13 +802,23 @@ public class MarketSense {
 				trainButton.setOnAction(new EventHandler<ActionEvent>() {
 					@Override
 					public void handle(ActionEvent event) {
-						newTrainingSession(
-							symbolDropdown.getValue(), 
-							barWidthDropdown.getValue(), 
-							sampleSizeDropdown.getValue(), 
-							Integer.parseInt(sampleCount.getText()), 
-							Integer.parseInt(maxLookback.getText())
-						);
+						String symbol = symbolDropdown.getValue();
+						String barWidth = barWidthDropdown.getValue();
+						int sampleSize = sampleSizeDropdown.getValue();
+						int samples = Integer.parseInt(sampleCount.getText());
+						int lookback = Integer.parseInt(maxLookback.getText());
+						
+						// collect market data and prepare samples off the javafx thread
+						trainButton.setDisable(true);
+						CompletableFuture.runAsync(() -> {
+							newTrainingSession(symbol, barWidth, sampleSize, samples, lookback);
+						}, sampleExecutor)
+						.whenCompleteAsync((result, error) -> {
+							if (error != null) {
+								System.out.println("ERROR failed to start training session: " + error.getMessage());
+							}
+							trainButton.setDisable(false);
+						}, Platform::runLater);
 					}
 				});
 			}
@@ -761,7 +887,7 @@ public class MarketSense {
 					abort.setOnAction(new EventHandler<ActionEvent>() {
 						@Override
 						public void handle(ActionEvent event) {
-							abortTrainingSession();
+							abortTrainingSession(session);
 						}
 					});
 					System.out.println("debug enabled abort button");
@@ -915,56 +1041,19 @@ public class MarketSense {
 				nextSample.setOnAction(new EventHandler<ActionEvent>() {
 					@Override
 					public void handle(ActionEvent event) {
-						// next sample
-						MarketSample sample = session.nextSample(dbManager, marketSynth);
-						if (sample != null) {
-							// reset last score
-							((Label) sessionRoot.lookup("#scoreLast")).setText("0.0");
-							
-							// disable next button
-							nextSample.setDisable(true);
-							
-							// enable color guess submit
-							((Button) sessionRoot.lookup("#colorGuessSubmit")).setDisable(false);
-							
-							// reset color guess
-							colorGuess.setValue(0.5);
-							
-							// reset true color
-							((Slider) sessionRoot.lookup("#colorTrue")).setValue(0.5);
-							
-							((Region) sessionRoot.lookup("#colorTrueTile")).setBackground(new Background(new BackgroundFill(
-								javafx.scene.paint.Color.WHITE, 
-								CornerRadii.EMPTY, 
-								Insets.EMPTY
-							)));
-							
-							// reload market data graph
-							currentSampleGraph = loadSampleGraph(sample, SAMPLE_GRAPH_WIDTH, SAMPLE_GRAPH_HEIGHT);
-							PannableCanvas canvas = currentSampleGraph.getCanvas();
-							
-							graphContainer.getChildren().clear();
-							graphContainer.setCenter(canvas);
-							graphContainer.setClip(new Rectangle(
-									canvas.getPrefWidth(), 
-									canvas.getPrefHeight()
-							));
-							
-							// TODO fix CartesianGraph.layout
-							// sampleGraph.layout();
-							
-							// save sample sound
-							if (Boolean.valueOf(properties.getProperty(PROP_SAVE_SOUNDS, "false"))) {
-								marketSynth.save(sample.getSound(), sample.idString());
-							}
-						}
-						// else, training session already complete
-						else {
-							System.out.println(
-								"ERROR: training session of " + session.getSampleCount() + 
-								" samples requested sample " + session.getSampleIdProperty().get()
-							);
-						}
+						// disable next button until the sample is shown
+						nextSample.setDisable(true);
+						
+						// wait for the next sample on the worker, then show it on the javafx thread
+						session.prefetchSample(barRepository, marketSynth, sampleExecutor)
+						.thenRunAsync(() -> {
+							showNextSample(sessionRoot, colorGuess, graphContainer);
+						}, Platform::runLater)
+						.exceptionally((error) -> {
+							System.out.println("ERROR failed to prepare next training sample: " + error.getMessage());
+							Platform.runLater(() -> nextSample.setDisable(false));
+							return null;
+						});
 					}
 				});
 				
@@ -1028,6 +1117,62 @@ public class MarketSense {
 				System.out.println("DEBUG loaded session controls");
 			}
 			
+			/**
+			 * Take the next sample, which should already be ready, and show it. Should be run on the javafx thread.
+			 */
+			private void showNextSample(Node sessionRoot, Slider colorGuess, BorderPane graphContainer) {
+				// next sample
+				MarketSample sample = session.nextSample(barRepository, marketSynth);
+				if (sample != null) {
+					// reset last score
+					((Label) sessionRoot.lookup("#scoreLast")).setText("0.0");
+					
+					// enable color guess submit
+					((Button) sessionRoot.lookup("#colorGuessSubmit")).setDisable(false);
+					
+					// reset color guess
+					colorGuess.setValue(0.5);
+					
+					// reset true color
+					((Slider) sessionRoot.lookup("#colorTrue")).setValue(0.5);
+					
+					((Region) sessionRoot.lookup("#colorTrueTile")).setBackground(new Background(new BackgroundFill(
+						javafx.scene.paint.Color.WHITE, 
+						CornerRadii.EMPTY, 
+						Insets.EMPTY
+					)));
+					
+					// reload market data graph
+					currentSampleGraph = loadSampleGraph(sample, SAMPLE_GRAPH_WIDTH, SAMPLE_GRAPH_HEIGHT);
+					PannableCanvas canvas = currentSampleGraph.getCanvas();
+					
+					graphContainer.getChildren().clear();
+					graphContainer.setCenter(canvas);
+					graphContainer.setClip(new Rectangle(
+							canvas.getPrefWidth(), 
+							canvas.getPrefHeight()
+					));
+					
+					// TODO fix CartesianGraph.layout
+					// sampleGraph.layout();
+					
+					// save sample sound
+					if (Boolean.valueOf(properties.getProperty(PROP_SAVE_SOUNDS, "false"))) {
+						marketSynth.save(sample.getSound(), sample.idString());
+					}
+					
+					// prepare the following sample while this one is heard
+					session.prefetchSample(barRepository, marketSynth, sampleExecutor);
+				}
+				// else, training session already complete
+				else {
+					System.out.println(
+						"ERROR: training session of " + session.getSampleCount() + 
+						" samples requested sample " + session.getSampleIdProperty().get()
+					);
+				}
+			}
+			
 			/**
 			 * Load a managed visual graph for the given market data sample. Note that as of 2021-08-21 the
 			 * {@code CartesianGraph} doesn't allow for flipping the y axis, so positive is down. Also, 
@@ -1267,50 +1412,77 @@ public class MarketSense {
 								String symbol = ((SymbolComboBox) performanceRow.lookup(".symbol-dropdown")).getValue();
 								String sampleCount = ((TextField) performanceRow.lookup(".sample-count-dropdown")).getText();
 								
-								// create new performance sample
-								PerformanceSample sample = new PerformanceSample(
-									// person
-									((AccountComboBox) performanceRow.lookup(".account-dropdown")).getValue(),
-									// security
-									symbol != null && symbol.length() != 0 
-										? Security.loadSecurity(symbol,dbManager,tdclient)
-										: null,
-									// date range
-									datePicker.getFirstValueProperty().getValue(), 
-									datePicker.getLastValueProperty().getValue(),
-									// bar width
-									((BarWidthComboBox) performanceRow.lookup(".bar-width-dropdown")).getValue(),
-									// sample size
-									((SampleSizeComboBox) performanceRow.lookup(".sample-size-dropdown")).getValue(),
-									// sample count
-									sampleCount != null && sampleCount.length() != 0 
-										? Integer.parseInt(sampleCount) 
-										: -1
-								);
-								
-								// TODO move sample data fetch off gui thread
-								// fetch sample points from database
-								sample.prepare(dbManager);
-								
-								// replace graph with data from new sample
-								CartesianGraph graph = loadPerformanceGraph(
-									sample, 
-									PERFORMANCE_GRAPH_WIDTH, 
-									PERFORMANCE_GRAPH_HEIGHT,
-									false
-								);
-								PannableCanvas canvas = graph.getCanvas();
-								
-								// place in graph container
-								graphContainer.getChildren().clear();
-								graphContainer.setCenter(canvas);
-								graphContainer.setClip(new Rectangle(
-										canvas.getPrefWidth(), 
-										canvas.getPrefHeight()
-								));
+								// read sample parameters on the javafx thread
+								Person account = ((AccountComboBox) performanceRow.lookup(".account-dropdown")).getValue();
+								LocalDate firstDate = datePicker.getFirstValueProperty().getValue();
+								LocalDate lastDate = datePicker.getLastValueProperty().getValue();
+								String barWidth = ((BarWidthComboBox) performanceRow.lookup(".bar-width-dropdown")).getValue();
+								Integer sampleSize = ((SampleSizeComboBox) performanceRow.lookup(".sample-size-dropdown")).getValue();
 								
-								// TODO fix CartesianGraph.layout
-								// graph.layout();
+								// resolve the security off the database workers, since a rate limited lookup can wait minutes
+								CompletableFuture.supplyAsync(() -> {
+									if (symbol == null || symbol.length() == 0) {
+										return null;
+									}
+									
+									try {
+										// a symbol lookup shares the rate limit of background universe collection
+										return universeCollector.loadSecurity(symbol);
+									}
+									catch (InterruptedException e) {
+										Thread.currentThread().interrupt();
+										throw new CompletionException(e);
+									}
+								}, sampleExecutor)
+								// fetch sample points from database off the javafx thread
+								.thenCompose((security) -> dbAccess.submit((dbManager) -> {
+									// create new performance sample
+									PerformanceSample sample = new PerformanceSample(
+										// person
+										account,
+										// security
+										security,
+										// date range
+										firstDate, 
+										lastDate,
+										// bar width
+										barWidth,
+										// sample size
+										sampleSize,
+										// sample count
+										sampleCount != null && sampleCount.length() != 0 
+											? Integer.parseInt(sampleCount) 
+											: -1
+									);
+									
+									sample.prepare(dbManager);
+									return sample;
+								}))
+								.thenAcceptAsync((sample) -> {
+									// replace graph with data from new sample
+									CartesianGraph graph = loadPerformanceGraph(
+										sample, 
+										PERFORMANCE_GRAPH_WIDTH, 
+										PERFORMANCE_GRAPH_HEIGHT,
+										false
+									);
+									PannableCanvas canvas = graph.getCanvas();
+									
+									// place in graph container
+									graphContainer.getChildren().clear();
+									graphContainer.setCenter(canvas);
+									graphContainer.setClip(new Rectangle(
+											canvas.getPrefWidth(), 
+											canvas.getPrefHeight()
+									));
+									
+									// TODO fix CartesianGraph.layout
+									// graph.layout();
+								}, Platform::runLater)
+								.exceptionally((e) -> {
+									System.out.println("ERROR failed to load performance sample: " + e.getMessage());
+									return null;
+								});
 							});
 						}
 						catch (IOException e) {
@@ -1398,9 +1570,10 @@ public class MarketSense {
 		System.out.println("loading people from local db");
 		
 		@SuppressWarnings("unchecked")
-		List<Person> people = (List<Person>) dbManager
-		.createQuery("select p from " + Person.DB_TABLE + " p")
-		.getResultList();
+		List<Person> people = dbAccess.call((dbManager) -> (List<Person>) dbManager
+			.createQuery("select p from " + Person.DB_TABLE + " p")
+			.getResultList()
+		);
 		System.out.println("loaded " + people.size() + " people from db");
 		
 		try {
@@ -1466,15 +1639,17 @@ public class MarketSense {
 			logout();
 		}
 		
-		person = dbManager.find(Person.class, username);
+		person = dbAccess.call((dbManager) -> dbManager.find(Person.class, username));
 		if (person == null) {
 			System.out.println("person " + username + " is not yet registered; creating new person");
 			
-			person = new Person(username);
-			// only needs to be called once; the program object will be persisted whenever a persistent field is changed
-			dbManager.getTransaction().begin();
-			dbManager.persist(person);
-			dbManager.getTransaction().commit();
+			Person newPerson = new Person(username);
+			// the person is detached afterward, so later changes to persistent fields must be merged
+			dbAccess.transact((dbManager) -> {
+				dbManager.persist(newPerson);
+				return null;
+			});
+			person = newPerson;
 		}
 		
 		// load dashboard
@@ -1484,14 +1659,16 @@ public class MarketSense {
 	public static <T extends Runnable> void loadTrainingSessions(Class<T> OnLoad, boolean guiThread) {
 		System.out.println("loading people from local db");
 		
+		String username = person.getUsername();
 		@SuppressWarnings("unchecked")
-		List<TrainingSession> sessions = (List<TrainingSession>) dbManager
-		.createQuery(
-			"select t from " + TrainingSession.DB_TABLE + " t " + 
-			"where t." + TrainingSession.DB_COL_ID + "." + TrainingSessionId.DB_COL_PERSON + "." + Person.DB_COL_USERNAME + " = :username"
-		)
-		.setParameter("username", person.getUsername())
-		.getResultList();
+		List<TrainingSession> sessions = dbAccess.call((dbManager) -> (List<TrainingSession>) dbManager
+			.createQuery(
+				"select t from " + TrainingSession.DB_TABLE + " t " + 
+				"where t." + TrainingSession.DB_COL_ID + "." + TrainingSessionId.DB_COL_PERSON + "." + Person.DB_COL_USERNAME + " = :username"
+			)
+			.setParameter("username", username)
+			.getResultList()
+		);
 		System.out.println("INFO loaded " + sessions.size() + " training sessions from db");
 		
 		try {
@@ -1538,7 +1715,16 @@ public class MarketSense {
 	 * @return
 	 */
 	public static boolean newTrainingSession(String symbol, String barWidth, int sampleSize, int sampleCount, int maxLookbackMonths) {
-		Security security = Security.loadSecurity(symbol, dbManager, tdclient);
+		Security security;
+		try {
+			// a symbol lookup shares the rate limit of background universe collection
+			security = universeCollector.loadSecurity(symbol);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.out.println("ERROR interrupted while loading security " + symbol + " for training session");
+			return false;
+		}
 		
 		// commit training session config to properties file
 		properties.setProperty(PROP_TRAIN_SYMBOL, symbol);
@@ -1557,11 +1743,16 @@ public class MarketSense {
 			System.out.println("starting a new training session " + session);
 			
 			// prepare the database
-			Failure failure = session.collectMarketUniverse(dbManager,tdclient);
+			Failure failure = session.collectMarketUniverse(barRepository, universeCollector);
 			
 			if (failure == null) {
 				System.out.println("market data universe acquired for lookback of " + session.getMaxLookbackMonths() + " months");
 				
+				// prepare every sample up front, so each is ready when requested
+				session.prepareSamples(barRepository, marketSynth);
+				System.out.println("DEBUG " + QueryTemplates.getSummary(dbAccess.getFactory()));
+				System.out.println("DEBUG " + SampleCache.getSummary());
+				
 				// show training session interface
 				Platform.runLater(new MarketSenseGUI.ShowTrainingSession(session));
 			}
@@ -1583,8 +1774,13 @@ public class MarketSense {
 	
 	/**
 	 * Abort the incomplete training session without committing it, and return to the dashboard.
+	 * 
+	 * @param session The incomplete training session.
 	 */
-	public static void abortTrainingSession() {
+	public static void abortTrainingSession(TrainingSession session) {
+		// stop playback and return the sounds of prepared samples
+		session.abort(marketSynth);
+		
 		Platform.runLater(new MarketSenseGUI.ShowDashboard());
 	}
 	
@@ -1595,11 +1791,14 @@ public class MarketSense {
 	 */
 	public static void commitTrainingSession(TrainingSession session) {
 		// complete the training session by attempting to request another sample
-		session.nextSample(null, null);
+		session.nextSample(null, marketSynth);
 		
 		if (session.getCompleteProperty().get()) {
 			// commit the completed training session to the database
-			TrainingSession.persist(session, dbManager);
+			dbAccess.call((dbManager) -> {
+				TrainingSession.persist(session, dbManager);
+				return null;
+			});
 			System.out.println("INFO committed new training session of duration " + session.getDuration().toString());
 			
 			// return to dashboard
@@ -1625,7 +1824,10 @@ public class MarketSense {
 			new Test().evaluate(false);
 		}
 		if (database) {
-			new TestDatabase(dbManager).evaluate(true);
+			dbAccess.call((dbManager) -> {
+				new TestDatabase(dbManager).evaluate(true);
+				return null;
+			});
 		}
 		if (marketSynth) {
 			new TestMarketSynth().evaluate(false);
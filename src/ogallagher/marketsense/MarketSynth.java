@@ -3,19 +3,21 @@ package ogallagher.marketsense;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.Buffer;
-import java.nio.ByteBuffer;
-import java.nio.ShortBuffer;
-import java.util.Date;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.ObjIntConsumer;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.DataLine;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.SourceDataLine;
 
+import ogallagher.marketsense.util.LruCache;
+import ogallagher.marketsense.util.SineTable;
 import ogallagher.temp_fx_logger.System;
 
 /**
@@ -29,8 +31,6 @@ import ogallagher.temp_fx_logger.System;
  *
  */
 public class MarketSynth {
-	private static final double TWO_PI = 2 * Math.PI;
-	
 	public static final SampleRate SAMPLE_RATE_DEFAULT = SampleRate.MEDIUM;
 	/**
 	 * Default duration of the sound/melody, in seconds.
@@ -60,12 +60,34 @@ public class MarketSynth {
 	 * Default amplitude formula.
 	 */
 	public static final AmplitudeFormula AMPLITUDE_FORMULA_DEFAULT = AmplitudeFormula.CONST;
+	/**
+	 * Default engine for harmonic timbre formulas.
+	 */
+	public static final HarmonicEngine HARMONIC_ENGINE_DEFAULT = HarmonicEngine.ADDITIVE;
+	/**
+	 * Bins per cycle per period in the spectrum of a {@link HarmonicEngine#SPECTRAL} timbre. Partials are placed
+	 * on the nearest bin, so a finer spectrum needs fewer correction terms, but has more bins.
+	 */
+	private static final int SPECTRUM_RESOLUTION = 4;
+	/**
+	 * Maximum error of a {@link HarmonicEngine#SPECTRAL} timbre, in sample values, before quantization.
+	 */
+	private static final double SPECTRUM_MAX_ERROR = 0.01;
+	/**
+	 * Maximum wait for playback to stop in {@link #stopPlayback()}, being much longer than one chunk of playback.
+	 */
+	private static final long STOP_PLAYBACK_TIMEOUT_MILLIS = 1000;
+	
+	/**
+	 * Default maximum size of the {@link #timbreCache}, in bytes.
+	 */
+	public static final long TIMBRE_CACHE_BYTES_DEFAULT = 1 << 20;
 	
 	public static final String SOUNDS_DIR = "sounds";
 	public static final String FILE_EXT = ".wav";
 	
-	private SampleSize sampleSize = SampleSize.SIXTEEN;
-	private SampleRate sampleRate = SAMPLE_RATE_DEFAULT;
+	private SampleSize sampleSize;
+	private SampleRate sampleRate;
 	private AudioChannels channels = AudioChannels.MONO;
 	boolean signed = true;
 	boolean bigEndian = true; // Java is big endian by default
@@ -79,29 +101,54 @@ public class MarketSynth {
 	 */
 	private int soundDuration = SOUND_DURATION_DEFAULT;
 	/**
-	 * Maximum allowed amplitude, given the datatype max value representing a single sample.
+	 * Maximum allowed amplitude, given the datatype max value representing a single sample. Depends on
+	 * {@link #sampleSize}, so is kept per instance.
 	 */
-	public static int amplitudeMax;
+	private int amplitudeMax;
 	/**
 	 * Fixed amplitude/volume as a proportion of {@link AMPLITUDE_MAX}.
 	 */
 	private float amplitude = 0.3f;
 	private AmplitudeFormula amplitudeFormula = AMPLITUDE_FORMULA_DEFAULT;
 	private TimbreFormula timbreFormula = TIMBRE_FORMULA_DEFAULT;
+	private HarmonicEngine harmonicEngine = HARMONIC_ENGINE_DEFAULT;
 	
 	/**
-	 * Line that feeds sound to speakers for playback.
+	 * Quantized timbre periods, which depend only on the normalized market data, formula, amplitude, sample
+	 * size, and period length. Reused across notes of the same pitch, repeated syntheses of the same sample, 
+	 * and saved sound exports.
 	 */
-	private SourceDataLine playbackLine = null;
+	private LruCache<TimbreKey,byte[]> timbreCache = new LruCache<>(
+		TIMBRE_CACHE_BYTES_DEFAULT, 
+		new LruCache.Weigher<byte[]>() {
+			@Override
+			public long weigh(byte[] period) {
+				return period.length;
+			}
+		}
+	);
 	
 	/**
-	 * Raw sound data, which can be split into samples and frames for playback.
+	 * Feeds sound to speakers for playback, created on first use.
 	 */
-	private byte[] soundData;
+	private PlaybackService playbackService = null;
 	/**
-	 * Number of frames in the sound.
+	 * Plays several sounds at once in stereo, created on first use.
 	 */
-	private int frameCount;
+	private SoundMixer mixer = null;
+	
+	/**
+	 * Recycles the sound data arrays of buffered sounds from {@link #synthesizeSound(float[], boolean)}.
+	 */
+	private PcmBufferPool bufferPool = new PcmBufferPool();
+	/**
+	 * Whether synthesized sounds are rendered lazily as their streams are read, rather than all at once.
+	 */
+	private boolean streaming = false;
+	/**
+	 * Runs the tasks of {@link #synthesizeBatch(List, boolean)} and {@link #saveBatch(List, boolean, String)}.
+	 */
+	private ForkJoinPool batchPool = ForkJoinPool.commonPool();
 	
 	private static File soundsDir;
 	
@@ -119,6 +166,27 @@ public class MarketSynth {
 	}
 	
 	public MarketSynth() {
+		this(SAMPLE_RATE_DEFAULT, SampleSize.SIXTEEN, TIMBRE_FORMULA_DEFAULT, AMPLITUDE_FORMULA_DEFAULT);
+	}
+	
+	public MarketSynth(TimbreFormula timbreFormula, AmplitudeFormula amplitudeFormula) {
+		this(SAMPLE_RATE_DEFAULT, SampleSize.SIXTEEN, timbreFormula, amplitudeFormula);
+	}
+	
+	/**
+	 * Full constructor.
+	 * 
+	 * @param sampleRate Samples per second.
+	 * @param sampleSize Bits per sample.
+	 * @param timbreFormula
+	 * @param amplitudeFormula
+	 */
+	public MarketSynth(SampleRate sampleRate, SampleSize sampleSize, TimbreFormula timbreFormula, AmplitudeFormula amplitudeFormula) {
+		this.sampleRate = sampleRate;
+		this.sampleSize = sampleSize;
+		this.timbreFormula = timbreFormula;
+		this.amplitudeFormula = amplitudeFormula;
+		
 		// connect mixer to the proper audio output channel
 		audioFormat = new AudioFormat(
 			sampleRate.getRate(),
@@ -134,37 +202,128 @@ public class MarketSynth {
 		else {
 			amplitudeMax = Byte.MAX_VALUE;
 		}
-		
-		soundData = new byte[
-		    sampleRate.getRate() *
-		    sampleSize.getByteSize() *
-		    channels.getCount() * 
-		    soundDuration
-		];
-		
-		frameCount = soundData.length/audioFormat.getFrameSize();
 	}
 	
-	public MarketSynth(TimbreFormula timbreFormula, AmplitudeFormula amplitudeFormula) {
-		this();
+	public void setTimbreFormula(TimbreFormula timbreFormula) {
 		this.timbreFormula = timbreFormula;
-		this.amplitudeFormula = amplitudeFormula;
 	}
 	
-	public void setTimbreFormula(TimbreFormula timbreFormula) {
-		this.timbreFormula = timbreFormula;
+	/**
+	 * @param harmonicEngine How timbres of the harmonic formulas {@link TimbreFormula#HARMONIC_REDOI} and
+	 * {@link TimbreFormula#MULT_HARMROI} are rendered.
+	 */
+	public void setHarmonicEngine(HarmonicEngine harmonicEngine) {
+		this.harmonicEngine = harmonicEngine;
+	}
+	
+	public HarmonicEngine getHarmonicEngine() {
+		return harmonicEngine;
 	}
 	
 	public void setAmplitudeFormula(AmplitudeFormula amplitudeFormula) {
 		this.amplitudeFormula = amplitudeFormula;
 	}
 	
+	/**
+	 * @param soundDuration Duration of the sound, in seconds.
+	 */
+	public void setSoundDuration(int soundDuration) {
+		this.soundDuration = soundDuration;
+	}
+	
+	public int getSoundDuration() {
+		return soundDuration;
+	}
+	
+	/**
+	 * Enable or disable streaming mode. When streaming, {@link #synthesize(float[], boolean)} returns right away
+	 * with a stream that renders blocks of samples as they are read, so time to first audio is near zero and memory
+	 * use is independent of {@link #soundDuration}. This is better for long sounds.
+	 * 
+	 * @param streaming
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+	
+	public boolean isStreaming() {
+		return streaming;
+	}
+	
+	/**
+	 * @param batchPool Pool on which batches of sounds are rendered, which defaults to the common pool.
+	 */
+	public void setBatchPool(ForkJoinPool batchPool) {
+		this.batchPool = batchPool;
+	}
+	
+	public ForkJoinPool getBatchPool() {
+		return batchPool;
+	}
+	
+	public TimbreFormula getTimbreFormula() {
+		return timbreFormula;
+	}
+	
+	public SampleRate getSampleRate() {
+		return sampleRate;
+	}
+	
+	public SampleSize getSampleSize() {
+		return sampleSize;
+	}
+	
+	public AudioFormat getAudioFormat() {
+		return audioFormat;
+	}
+	
+	public PcmBufferPool getBufferPool() {
+		return bufferPool;
+	}
+	
+	public static File getSoundsDir() {
+		return soundsDir;
+	}
+	
+	/**
+	 * @return Identifier of every setting that affects synthesized sound data, for keying rendered sounds.
+	 */
+	public String getSettingsId() {
+		return new StringBuilder()
+			.append(timbreFormula)
+			.append('_')
+			.append(amplitudeFormula)
+			.append('_')
+			.append(harmonicEngine)
+			.append('_')
+			.append(sampleRate.getRate())
+			.append('_')
+			.append(sampleSize.getSize())
+			.append('_')
+			.append(channels.getCount())
+			.append('_')
+			.append(soundDuration)
+			.append('_')
+			.append(amplitude)
+			.toString();
+	}
+	
+	/**
+	 * @return Cache of timbre periods, for inspecting hit and miss counts.
+	 */
+	public LruCache<TimbreKey,byte[]> getTimbreCache() {
+		return timbreCache;
+	}
+	
 	/**
 	 * Convert the market data to a sound, accessible via audio input stream. If {@code marketData=null}
 	 * then a random sequence of length {@link SOUND_NOTE_COUNT_DEFAULT} is generated.
 	 * 
 	 * If the market data is already normalized, use with {@code normalize=false}.
 	 * 
+	 * If {@link #streaming} is enabled, the sound is rendered block by block as the stream is read, instead of
+	 * all at once into a new array.
+	 * 
 	 * TODO add a small silence between notes to allow speaker to transition between frequencies.
 	 * 
 	 * @param marketData
@@ -172,6 +331,138 @@ public class MarketSynth {
 	 * the data should already be normalized. If {@code marketData=null} then this arg is ignored.
 	 */
 	public AudioInputStream synthesize(float[] marketData, boolean normalize) {
+		Melody melody = compose(marketData, normalize);
+		
+		if (streaming) {
+			return streamMelody(melody);
+		}
+		else {
+			// write samples to an unpooled array owned by the returned stream
+			byte[] soundData = new byte[melody.getByteCount()];
+			melody.render(soundData, 0, 0, melody.getSampleCount());
+			
+			return bufferStream(melody, soundData);
+		}
+	}
+	
+	/**
+	 * Same as {@link #synthesize(float[], boolean)}, except that a buffered sound is written into a buffer from 
+	 * {@link #bufferPool}, which the caller must {@link SynthSound#release() release} once done with the sound.
+	 * 
+	 * Each sound has its own buffer, so sounds prepared earlier are not overwritten by later ones, and one synth
+	 * can serve concurrent callers.
+	 * 
+	 * @param marketData
+	 * @param normalize
+	 * 
+	 * @return The sound, which owns its pooled buffer.
+	 */
+	public SynthSound synthesizeSound(float[] marketData, boolean normalize) {
+		Melody melody = compose(marketData, normalize);
+		
+		if (streaming) {
+			return new SynthSound(streamMelody(melody), null);
+		}
+		else {
+			PcmBufferPool.PcmBuffer buffer = bufferPool.acquire(melody.getByteCount());
+			byte[] soundData = buffer.getData();
+			melody.render(soundData, 0, 0, melody.getSampleCount());
+			
+			return new SynthSound(bufferStream(melody, soundData), buffer);
+		}
+	}
+	
+	/**
+	 * Copy already rendered sound data, for example from a {@link SampleCache}, into a buffer from 
+	 * {@link #bufferPool}, which the caller must {@link SynthSound#release() release} once done with the sound.
+	 * 
+	 * @param soundData Sound data in this synth's {@link #audioFormat}.
+	 * 
+	 * @return The sound, which owns its pooled buffer.
+	 */
+	public SynthSound loadSound(byte[] soundData) {
+		PcmBufferPool.PcmBuffer buffer = bufferPool.acquire(soundData.length);
+		java.lang.System.arraycopy(soundData, 0, buffer.getData(), 0, soundData.length);
+		
+		AudioInputStream stream = new AudioInputStream(
+			new ByteArrayInputStream(buffer.getData(), 0, soundData.length),
+			audioFormat,
+			soundData.length / audioFormat.getFrameSize()
+		);
+		return new SynthSound(stream, buffer);
+	}
+	
+	/**
+	 * Synthesize many sounds in parallel on the {@link #batchPool}. Each sound is rendered by a single task into
+	 * its own pooled buffer, as with {@link #synthesizeSound(float[], boolean)}, so the caller must release each
+	 * sound once done with it.
+	 * 
+	 * @param marketData Market data of each sound.
+	 * @param normalize
+	 * 
+	 * @return The sounds, in the same order as {@code marketData}.
+	 */
+	public List<SynthSound> synthesizeBatch(List<float[]> marketData, boolean normalize) {
+		final SynthSound[] sounds = new SynthSound[marketData.size()];
+		
+		batchPool.invoke(new BatchTask(marketData, 0, sounds.length, (data, index) -> {
+			sounds[index] = synthesizeSound(data, normalize);
+		}));
+		
+		return Arrays.asList(sounds);
+	}
+	
+	/**
+	 * Synthesize many sounds in parallel on the {@link #batchPool}, and save each to a file in the sounds dir. 
+	 * Each sound's buffer is released once written, so memory use depends on the parallelism rather than the
+	 * number of sounds.
+	 * 
+	 * @param marketData Market data of each sound.
+	 * @param normalize
+	 * @param filename Base filename, to which the index of each sound is appended.
+	 * 
+	 * @return The saved file of each sound, or {@code null} where the save failed.
+	 */
+	public List<File> saveBatch(List<float[]> marketData, boolean normalize, String filename) {
+		final File[] files = new File[marketData.size()];
+		
+		batchPool.invoke(new BatchTask(marketData, 0, files.length, (data, index) -> {
+			SynthSound sound = synthesizeSound(data, normalize);
+			files[index] = write(sound.getStream(), filename + "_" + index);
+			sound.release();
+		}));
+		
+		System.out.println("INFO saved batch of " + files.length + " sounds to " + soundsDir.getAbsolutePath());
+		return Arrays.asList(files);
+	}
+	
+	private AudioInputStream streamMelody(Melody melody) {
+		return new AudioInputStream(
+			new MelodyInputStream(melody),
+			audioFormat,
+			melody.getFrameCount()
+		);
+	}
+	
+	private AudioInputStream bufferStream(Melody melody, byte[] soundData) {
+		return new AudioInputStream(
+			new ByteArrayInputStream(soundData, 0, melody.getByteCount()),
+			audioFormat,
+			melody.getFrameCount()
+		);
+	}
+	
+	/**
+	 * Normalize the market data and lay out the notes of the resulting sound, without rendering any samples.
+	 * 
+	 * @param marketData
+	 * @param normalize
+	 * 
+	 * @return The melody, which can render any range of samples on demand.
+	 * 
+	 * @see #synthesize(float[], boolean)
+	 */
+	private Melody compose(float[] marketData, boolean normalize) {
 		// generate market data if not provided
 		if (marketData == null) {
 			marketData = new float[SOUND_NOTE_COUNT_DEFAULT];
@@ -180,209 +471,381 @@ public class MarketSynth {
 				marketData[d] = (float) Math.random();
 			}
 		}
-		else if (normalize) {
-			// normalize market data
-			float min = marketData[0];
-			float max = min;
+		else {
+			// compose from a copy, leaving the caller's market data unchanged
+			marketData = marketData.clone();
 			
-			// find range
-			for (int d=1; d<marketData.length; d++) {
-				float datum = marketData[d];
-				if (datum < min) {
-					min = datum;
-				}
-				else if (datum > max) {
-					max = datum;
+			if (normalize) {
+				// normalize market data
+				float min = marketData[0];
+				float max = min;
+				
+				// find range
+				for (int d=1; d<marketData.length; d++) {
+					float datum = marketData[d];
+					if (datum < min) {
+						min = datum;
+					}
+					else if (datum > max) {
+						max = datum;
+					}
 				}
-			}
-			float range = max-min;
-			
-			// constrain
-			for (int d=0; d<marketData.length; d++) {
-				float raw = marketData[d];
+				float range = max-min;
 				
-				marketData[d] = (raw-min) / range;
+				// constrain
+				for (int d=0; d<marketData.length; d++) {
+					float raw = marketData[d];
+					
+					marketData[d] = (raw-min) / range;
+				}
 			}
 		}
 		
-		// convert to buffer object of bytes or shorts depending on sample size
-		Buffer soundBuffer;
-		boolean shortNotByte;
-		if (sampleSize == SampleSize.EIGHT) {
-			soundBuffer = ByteBuffer.wrap(soundData);
-			shortNotByte = false;
-		}
-		else {
-			soundBuffer = ByteBuffer.wrap(soundData).asShortBuffer();
-			shortNotByte = true;
-		}
-		
-		// write samples to soundBuffer=>soundData
 		float pitchRadius = PITCH_RANGE*0.5f;
 		float pitchCenter = PITCH_MIN + pitchRadius;
 		float amplitudeValue = amplitude * amplitudeMax;
 		System.out.println("synth sound with pitch=" + pitchCenter + " amplitude=" + amplitudeValue);
-		int rate = sampleRate.getRate();
 		
-		int noteCount = marketData.length;
-		int noteSampleSize = soundBuffer.capacity() / noteCount;
+		return new Melody(marketData, pitchCenter, pitchRadius, amplitudeValue);
+	}
+	
+	/**
+	 * @param timbre Timbre period.
+	 * @return The period as signed big endian 16 bit samples.
+	 */
+	private static byte[] quantize16(double[] timbre) {
+		byte[] period = new byte[timbre.length * 2];
+		
+		for (int t=0, b=0; t<timbre.length; t++) {
+			short sample = (short) timbre[t];
+			period[b++] = (byte) (sample >> 8);
+			period[b++] = (byte) sample;
+		}
+		
+		return period;
+	}
+	
+	/**
+	 * @param timbre Timbre period.
+	 * @return The period as signed 8 bit samples.
+	 */
+	private static byte[] quantize8(double[] timbre) {
+		byte[] period = new byte[timbre.length];
 		
-		double[] timbre = null;
-		double pitch = PITCH_MIN;
-		int note = -1;
-		int timbreSample = 0;
+		for (int t=0; t<timbre.length; t++) {
+			period[t] = (byte) timbre[t];
+		}
 		
-		for (float s=0; s<soundBuffer.capacity(); s++) {
-			if (s % noteSampleSize == 0) {
-				// move pitch to next note
+		return period;
+	}
+	
+	/**
+	 * Write one period of the timbre, using the kernel for the given formula. The kernel is chosen once per 
+	 * period, so each kernel loop is free of formula checks.
+	 * 
+	 * @param timbreFormula
+	 * @param marketData
+	 * @param amplitude
+	 * @param timbre Output parameter into which timbre values for a single period are written.
+	 */
+	private static void createTimbre(TimbreFormula timbreFormula, HarmonicEngine harmonicEngine, float[] marketData, float amplitude, double[] timbre) {
+		switch (timbreFormula) {
+			case SINE:
+				timbreSine(amplitude, timbre);
+				break;
 				
-				if (note < marketData.length-1) {
-					note++;
-				}
-				// else if note index is beyond market data, extend last note
+			case ABS_AMP:
+				timbreAbsAmp(marketData, amplitude, timbre);
+				break;
 				
-				pitch = pitchCenter + (marketData[note]-0.5) * pitchRadius;
+			case MULT:
+				timbreSine(amplitude, timbre);
+				multiplyByData(marketData, timbre);
+				break;
 				
-				// create timbre matching input data shape with new length
-				int periodSampleSize = (int) (rate / pitch);
-				timbre = new double[periodSampleSize];
+			case HARMONIC_REDOI:
+				timbreHarmonic(harmonicEngine, marketData, amplitude, timbre);
+				break;
 				
-				// write values to timbre
-				createTimbre(marketData, amplitudeValue, timbre);
-			}
-			
-			// double time = s/rate;
-			
-			// select sample from within current timbre
-			if (timbreSample >= timbre.length) {
-				timbreSample = 0;
-			}
-			double sample = timbre[timbreSample++];
+			case MULT_HARMROI:
+				timbreHarmonic(harmonicEngine, marketData, amplitude, timbre);
+				multiplyByData(marketData, timbre);
+				break;
+		}
+	}
+	
+	/**
+	 * Pure sine.
+	 */
+	private static void timbreSine(float amplitude, double[] timbre) {
+		double increment = 1.0 / timbre.length;
+		double phase = 0;
+		
+		for (int t=0; t<timbre.length; t++) {
+			timbre[t] = SineTable.sinWrapped(phase) * amplitude;
 			
-			if (shortNotByte) {
-				((ShortBuffer) soundBuffer).put((short) sample); 
+			phase += increment;
+			if (phase >= 1) {
+				phase -= 1;
 			}
-			else {
-				((ByteBuffer) soundBuffer).put((byte) sample);
-			}
-	    }
-		
-		// convert soundData to audio input stream
-		AudioInputStream soundStream = new AudioInputStream(
-			new ByteArrayInputStream(soundData),
-			audioFormat,
-			frameCount
-		);
+		}
+	}
+	
+	/**
+	 * Raw price absolute amplitudes (half amplitude).
+	 */
+	private static void timbreAbsAmp(float[] marketData, float amplitude, double[] timbre) {
+		double tld = timbre.length;
 		
-		return soundStream;
+		for (int t=0; t<timbre.length; t++) {
+			int di = (int) (t/tld * marketData.length);
+			timbre[t] = amplitude * marketData[di];
+		}
 	}
 	
 	/**
-	 * 
-	 * @param marketData
-	 * @param timbre Output parameter into which timbre values for a single period are written.
+	 * Price as amplitude multiplier, using the nearest price with the data duration scaled to 1 period.
 	 */
-	private void createTimbre(float[] marketData, float amplitude, double[] timbre) {
+	private static void multiplyByData(float[] marketData, double[] timbre) {
 		double tld = timbre.length;
+		
 		for (int t=0; t<timbre.length; t++) {
-			double tt;
-			int di;
-			double tv;
-			double theta;
-			int oi;
-			double den;
+			int di = (int) (t/tld * marketData.length);
+			timbre[t] *= marketData[di];
+		}
+	}
+	
+	/**
+	 * Price as harmonic overtone of fundamental pitch with reduced amplitude according to overtone index.
+	 */
+	private static void timbreHarmonic(HarmonicEngine harmonicEngine, float[] marketData, float amplitude, double[] timbre) {
+		if (harmonicEngine == HarmonicEngine.SPECTRAL) {
+			timbreHarmonicSpectral(marketData, amplitude, timbre);
+		}
+		else {
+			timbreHarmonicAdditive(marketData, amplitude, timbre);
+		}
+	}
+	
+	/**
+	 * Harmonic timbre by brute force. Each partial has its own phase accumulator, and is summed into the timbre
+	 * in its own pass, so cost is {@code O(P*N)} for period length {@code P} and {@code N} partials.
+	 */
+	private static void timbreHarmonicAdditive(float[] marketData, float amplitude, double[] timbre) {
+		double tld = timbre.length;
+		
+		// fundamental
+		timbreSine(amplitude, timbre);
+		
+		int oi = marketData.length; // overtone index
+		double den = 2 * marketData.length * marketData.length; // denominator
+		for (float dv : marketData) {
+			double ra = amplitude * oi / den; // reduced amplitude
+			double increment = (1 + dv) / tld;
+			double phase = 0;
 			
-			switch (timbreFormula) {
-				case SINE:
-					// pure sine
-					tt = t/tld;
-					timbre[t] = Math.sin(TWO_PI*tt) * amplitude;
-					break;
-					
-				case ABS_AMP:
-					// raw price absolute amplitudes (half amplitude)
-					tt = t/tld;
-					di = (int) (tt * marketData.length);
-					
-					timbre[t] = amplitude * marketData[di];
-					break;
-					
-				case MULT:
-					// price as sine amplitude multiplier
-					tt = t/tld;
-					di = (int) (tt * marketData.length);
-					
-					timbre[t] = Math.sin(TWO_PI*tt) * amplitude * marketData[di];
-					break;
-					
-				case HARMONIC_REDOI:
-					// price as harmonic overtone of fundamental pitch with reduced amplitude according to overtone index
-					tt = t/tld;
-					theta = TWO_PI*tt;
-					
-					tv = Math.sin(theta) * amplitude;
-					
-					oi = marketData.length; // overtone index
-					den = 2 * marketData.length * marketData.length; // denominator
-					for (float dv : marketData) {
-						double ra = amplitude * oi / den; // reduced amplitude
-						tv += Math.sin(theta + (theta * dv)) * ra;
-						oi--;
-					}
-					
-					timbre[t] = tv;
-					break;
-					
-				case MULT_HARMROI:
-					// combine MULT and HARMONIC_REDOI
-					tt = t/tld;
-					di = (int) (tt * marketData.length); // nearest pitch, duration scaled to 1 period
-					theta = TWO_PI*tt;
-					
-					double am = amplitude * marketData[di];
-					tv = Math.sin(theta) * am;
-					
-					oi = marketData.length; // overtone index
-					den = 2 * marketData.length * marketData.length; // denominator
-					for (float dv : marketData) {
-						double ra = am * oi / den; // reduced amplitude
-						tv += Math.sin(theta + (theta * dv)) * ra;
-						oi--;
-					}
-					
-					timbre[t] = tv;
-					break;
+			for (int t=0; t<timbre.length; t++) {
+				timbre[t] += SineTable.sinWrapped(phase) * ra;
+				
+				phase += increment;
+				if (phase >= 1) {
+					phase -= 1;
+				}
 			}
+			
+			oi--;
 		}
 	}
 	
 	/**
-	 * Play the given sound a given number of times.
+	 * <p>Harmonic timbre rendered from a spectrum of all partials, whose cost is {@code O(P*Q*K)} for period 
+	 * length {@code P}, {@link #SPECTRUM_RESOLUTION} {@code Q}, and {@code K} correction terms, and does not depend
+	 * on the number of partials.</p>
+	 * 
+	 * <p>A partial of {@code 1+dv} cycles per period is not a whole number of cycles, so does not fall on a bin of
+	 * the period's own spectrum. Instead the spectrum has {@code Q} bins per cycle per period, each partial is
+	 * placed on its nearest bin {@code j}, and the remaining offset {@code d} (at most half a bin) is corrected
+	 * with a Taylor series:</p>
+	 * 
+	 * <pre>
+	 * e^(2*PI*i*(j+d)*t/(Q*P)) = e^(2*PI*i*j*t/(Q*P)) * sum(m=0..K-1: (2*PI*i*d*t/(Q*P))^m / m!)
+	 * </pre>
+	 * 
+	 * <p>So each order {@code m} of the series is one spectrum, whose bins hold {@code sum(amplitude*d^m)} of their
+	 * partials. Each spectrum is inverse transformed, scaled by {@code (2*PI*i*t/(Q*P))^m / m!}, and summed by
+	 * Horner's rule. Because {@code t<P} and {@code |d|<=1/2}, the first dropped term is bounded by 
+	 * {@code (PI/Q)^K / K!} of the partials' total amplitude, and {@code K} is chosen to keep it within
+	 * {@link #SPECTRUM_MAX_ERROR}.</p>
+	 * 
+	 * <p>All partials are within one octave above the fundamental, so only the {@code Q+1} bins of that octave
+	 * are occupied. The inverse transform is therefore pruned to those bins, each being a phasor rotated once per 
+	 * sample, rather than a full FFT that would mostly transform empty bins.</p>
 	 */
-	public void playback(AudioInputStream soundStream, int repeats) {
-		if (playbackLine == null) {
-			// retrieve the current playback line
-			DataLine.Info lineInfo = new DataLine.Info(SourceDataLine.class, audioFormat);
-			try {
-				playbackLine = (SourceDataLine) AudioSystem.getLine(lineInfo);
-			} 
-			catch (LineUnavailableException e) {
-				System.out.println("error: no playback line available");
+	private static void timbreHarmonicSpectral(float[] marketData, float amplitude, double[] timbre) {
+		int periodSampleSize = timbre.length;
+		int binCount = SPECTRUM_RESOLUTION + 1;
+		
+		// fundamental
+		timbreSine(amplitude, timbre);
+		
+		// partial bins and offsets
+		int noteCount = marketData.length;
+		int[] bins = new int[noteCount];
+		double[] offsets = new double[noteCount];
+		double[] weights = new double[noteCount];
+		double totalAmplitude = 0;
+		
+		int oi = noteCount; // overtone index
+		double den = 2 * noteCount * noteCount; // denominator
+		for (int d=0; d<noteCount; d++) {
+			double frequency = (1 + marketData[d]) * SPECTRUM_RESOLUTION;
+			int bin = (int) Math.round(frequency);
+			bins[d] = bin - SPECTRUM_RESOLUTION;
+			offsets[d] = frequency - bin;
+			weights[d] = amplitude * oi / den;
+			totalAmplitude += weights[d];
+			
+			oi--;
+		}
+		
+		// number of correction terms
+		double maxPhase = Math.PI / SPECTRUM_RESOLUTION;
+		int termCount = 1;
+		double bound = totalAmplitude * maxPhase;
+		while (bound > SPECTRUM_MAX_ERROR) {
+			termCount++;
+			bound *= maxPhase / termCount;
+		}
+		
+		// spectrum of each order, being amplitude*d^m of each partial summed into its bin
+		double[][] spectra = new double[termCount][binCount];
+		for (int m=0; m<termCount; m++) {
+			for (int d=0; d<noteCount; d++) {
+				spectra[m][bins[d]] += weights[d];
+				weights[d] *= offsets[d];
 			}
 		}
 		
-		if (playbackLine != null) {
-			try {
-				soundStream.reset();
-				new PlaybackThread(soundStream, playbackLine, repeats).start();
-			} 
-			catch (IOException e) {
-				System.out.println("failed to reset sound stream for playback");
+		// bin phasors, and their rotation per sample
+		double binStep = 2 * Math.PI / (SPECTRUM_RESOLUTION * periodSampleSize);
+		double[] phasorRe = new double[binCount];
+		double[] phasorIm = new double[binCount];
+		double[] rotationRe = new double[binCount];
+		double[] rotationIm = new double[binCount];
+		for (int b=0; b<binCount; b++) {
+			phasorRe[b] = 1;
+			rotationRe[b] = Math.cos(binStep * (SPECTRUM_RESOLUTION + b));
+			rotationIm[b] = Math.sin(binStep * (SPECTRUM_RESOLUTION + b));
+		}
+		
+		double[] orderRe = new double[termCount];
+		double[] orderIm = new double[termCount];
+		for (int t=0; t<periodSampleSize; t++) {
+			// inverse transform of each order at this sample
+			Arrays.fill(orderRe, 0);
+			Arrays.fill(orderIm, 0);
+			for (int b=0; b<binCount; b++) {
+				double pr = phasorRe[b];
+				double pi = phasorIm[b];
+				
+				for (int m=0; m<termCount; m++) {
+					double c = spectra[m][b];
+					orderRe[m] += c * pr;
+					orderIm[m] += c * pi;
+				}
+				
+				phasorRe[b] = pr * rotationRe[b] - pi * rotationIm[b];
+				phasorIm[b] = pr * rotationIm[b] + pi * rotationRe[b];
+			}
+			
+			// sum orders by Horner's rule, sum = order[m] + sum * (2*PI*i*t/(Q*P)) / (m+1)
+			double x = binStep * t;
+			double sumRe = orderRe[termCount-1];
+			double sumIm = orderIm[termCount-1];
+			for (int m=termCount-2; m>=0; m--) {
+				double xm = x / (m+1);
+				double re = orderRe[m] - sumIm * xm;
+				sumIm = orderIm[m] + sumRe * xm;
+				sumRe = re;
 			}
+			
+			// partials are sines, being the imaginary part
+			timbre[t] += sumIm;
 		}
-		else {
-			System.out.println("speakers not connected; skipping playback");
+	}
+	
+	/**
+	 * Play the given sound a given number of times, replacing any sound already playing.
+	 * 
+	 * @param soundStream
+	 * @param repeats Number of times to play the sound, or {@link PlaybackService#REPEAT_FOREVER}.
+	 * 
+	 * @return The playback request, which can be cancelled.
+	 */
+	public PlaybackService.PlayRequest playback(AudioInputStream soundStream, int repeats) {
+		return getPlaybackService().replace(soundStream, repeats);
+	}
+	
+	/**
+	 * Stop the sound playing, if any, and wait until its sound data is no longer read, so that its buffer can be
+	 * released.
+	 * 
+	 * @return Whether playback stopped before the timeout.
+	 */
+	public boolean stopPlayback() {
+		PlaybackService service;
+		synchronized (this) {
+			service = playbackService;
 		}
+		
+		// a synth that never played has nothing to stop
+		return service == null || service.cancelAndAwait(STOP_PLAYBACK_TIMEOUT_MILLIS);
+	}
+	
+	/**
+	 * @return The playback service of this synth, which keeps its line open between sounds and measures 
+	 * playback latency.
+	 */
+	public synchronized PlaybackService getPlaybackService() {
+		if (playbackService == null) {
+			playbackService = new PlaybackService(audioFormat);
+			playbackService.start();
+		}
+		return playbackService;
+	}
+	
+	/**
+	 * Play several sounds at once, spread evenly from left to right across the stereo output.
+	 * 
+	 * @param soundStreams Sounds of this synth.
+	 * @param repeats Number of times to play each sound, or {@link PlaybackService#REPEAT_FOREVER}.
+	 * 
+	 * @return The voice of each sound, or {@code null} for a sound that could not be added.
+	 */
+	public List<SoundMixer.Voice> playbackMixed(List<AudioInputStream> soundStreams, int repeats) {
+		SoundMixer mixer = getMixer();
+		int count = soundStreams.size();
+		SoundMixer.Voice[] voices = new SoundMixer.Voice[count];
+		
+		for (int s=0; s<count; s++) {
+			float pan = (count == 1)
+				? SoundMixer.PAN_CENTER
+				: SoundMixer.PAN_LEFT + (SoundMixer.PAN_RIGHT - SoundMixer.PAN_LEFT) * s / (count-1);
+			voices[s] = mixer.addVoice(soundStreams.get(s), pan, 1, repeats);
+		}
+		
+		return Arrays.asList(voices);
+	}
+	
+	/**
+	 * @return The mixer of this synth, whose output is {@link AudioChannels#STEREO stereo}.
+	 */
+	public synchronized SoundMixer getMixer() {
+		if (mixer == null) {
+			mixer = new SoundMixer(audioFormat);
+			mixer.start();
+		}
+		return mixer;
 	}
 	
 	/**
@@ -391,65 +854,376 @@ public class MarketSynth {
 	 * @param filePath
 	 */
 	public void save(AudioInputStream soundStream, String filename) {
+		File file = write(soundStream, filename);
+		
+		if (file != null) {
+			System.out.println("saved sound to " + file.getAbsolutePath());
+		}
+	}
+	
+	/**
+	 * Write the given sound to a wave file in the sounds dir.
+	 * 
+	 * @param soundStream
+	 * @param filename
+	 * 
+	 * @return The written file, or {@code null} on failure.
+	 */
+	private File write(AudioInputStream soundStream, String filename) {
 		File file = new File(soundsDir.getAbsolutePath(), timbreFormula.toString() + "_" + filename + FILE_EXT);
 		
 		try {
 			soundStream.reset();
 			AudioSystem.write(soundStream, AudioFileFormat.Type.WAVE, file);
-			System.out.println("saved sound to " + file.getAbsolutePath());
+			return file;
 		}
 		catch (IOException e) {
 			System.out.println("error: failed to save sound to " + file.getAbsolutePath());
+			return null;
 		}
 	}
 	
-	public class PlaybackThread extends Thread {
-		private AudioInputStream soundStream;
-		private SourceDataLine playbackLine;
-		private int repeats;
-		private byte[] playBuffer;
+	/**
+	 * Layout of the notes in one synthesized sound, which renders any range of its samples on demand. Rendering
+	 * a range does not depend on which ranges were rendered before it, so a sound can be rendered all at once,
+	 * in blocks, or from an arbitrary position.
+	 * 
+	 * Note that this is not thread-safe, as it remembers the last timbre period used.
+	 * 
+	 * @since 2026-10-18
+	 */
+	private class Melody {
+		private TimbreFormula timbreFormula;
+		private HarmonicEngine harmonicEngine;
+		private int byteSize;
+		private float amplitude;
+		/**
+		 * Normalized market data snapshot, shared by the timbre cache keys of all notes.
+		 */
+		private float[] marketData;
+		private int marketDataHash;
+		
+		private int sampleCount;
+		/**
+		 * First sample of each note.
+		 */
+		private int[] noteStarts;
+		/**
+		 * Timbre period length of each note, in samples.
+		 */
+		private int[] periodSampleSizes;
+		/**
+		 * Position within the timbre period at the first sample of each note.
+		 */
+		private int[] timbreStarts;
 		
-		public PlaybackThread(AudioInputStream soundStream, SourceDataLine playbackLine, int repeats) {
-			this.soundStream = soundStream;
-			this.playbackLine = playbackLine;
-			this.repeats = repeats;
+		private int lastNote = -1;
+		private byte[] lastPeriod = null;
+		
+		public Melody(float[] marketData, float pitchCenter, float pitchRadius, float amplitude) {
+			this.timbreFormula = MarketSynth.this.timbreFormula;
+			this.harmonicEngine = MarketSynth.this.harmonicEngine;
+			this.byteSize = sampleSize.getByteSize();
+			this.amplitude = amplitude;
+			this.marketData = marketData;
+			this.marketDataHash = Arrays.hashCode(marketData);
+			
+			int rate = sampleRate.getRate();
+			sampleCount = rate * channels.getCount() * soundDuration;
 			
-			playBuffer = new byte[playbackLine.getBufferSize()];
-			System.out.println("init playback line with buffer size " + playBuffer.length);
+			int noteCount = marketData.length;
+			int noteSampleSize = sampleCount / noteCount;
+			
+			noteStarts = new int[noteCount];
+			periodSampleSizes = new int[noteCount];
+			timbreStarts = new int[noteCount];
+			
+			// position within the current timbre period carries over between notes
+			int timbreSample = 0;
+			for (int note=0; note<noteCount; note++) {
+				noteStarts[note] = note * noteSampleSize;
+				
+				double pitch = pitchCenter + (marketData[note]-0.5) * pitchRadius;
+				int periodSampleSize = (int) (rate / pitch);
+				periodSampleSizes[note] = periodSampleSize;
+				
+				if (timbreSample >= periodSampleSize) {
+					timbreSample = 0;
+				}
+				timbreStarts[note] = timbreSample;
+				
+				// the last note extends to the end of the sound
+				int noteEnd = (note == noteCount-1) ? sampleCount : noteStarts[note] + noteSampleSize;
+				timbreSample = (int) ((timbreSample + (long) (noteEnd - noteStarts[note])) % periodSampleSize);
+			}
+		}
+		
+		public int getSampleCount() {
+			return sampleCount;
 		}
 		
-		public void run() {
-			try {
-				playbackLine.open(audioFormat);
-				playbackLine.start();
+		public long getFrameCount() {
+			return sampleCount / channels.getCount();
+		}
+		
+		public int getByteCount() {
+			return sampleCount * byteSize;
+		}
+		
+		/**
+		 * Write a range of samples.
+		 * 
+		 * @param dest Destination array.
+		 * @param destOffset Byte offset in {@code dest} of the first sample.
+		 * @param first First sample to write.
+		 * @param count Number of samples to write.
+		 */
+		public void render(byte[] dest, int destOffset, int first, int count) {
+			int end = first + count;
+			int noteCount = noteStarts.length;
+			
+			// find note of first sample
+			int note = Arrays.binarySearch(noteStarts, first);
+			if (note < 0) {
+				note = -note - 2;
+			}
+			
+			int s = first;
+			int d = destOffset;
+			while (s < end) {
+				int noteEnd = (note == noteCount-1) ? sampleCount : noteStarts[note+1];
+				int stop = Math.min(noteEnd, end);
 				
-				long start = new Date().getTime();
+				byte[] period = getPeriod(note);
+				int periodSampleSize = periodSampleSizes[note];
+				int timbreSample = (int) ((timbreStarts[note] + (long) (s - noteStarts[note])) % periodSampleSize);
 				
-				for (int r=0; r<repeats; r++) {
-					int total = 0;
+				// tile the period over the note
+				while (s < stop) {
+					int n = Math.min(stop - s, periodSampleSize - timbreSample);
+					java.lang.System.arraycopy(period, timbreSample * byteSize, dest, d, n * byteSize);
 					
-					while (total < soundData.length) {
-						int newBytes = soundStream.read(playBuffer);
-						if (newBytes == -1) break;
-						total += newBytes;
-						playbackLine.write(playBuffer, 0, newBytes);
+					s += n;
+					d += n * byteSize;
+					timbreSample += n;
+					if (timbreSample == periodSampleSize) {
+						timbreSample = 0;
 					}
-					
-					soundStream.reset();
 				}
 				
-				playbackLine.drain();
-				playbackLine.stop();
+				note++;
+			}
+		}
+		
+		/**
+		 * @param note Note index.
+		 * 
+		 * @return Quantized timbre period of the note, from the {@link #timbreCache} if available.
+		 */
+		private byte[] getPeriod(int note) {
+			if (note == lastNote) {
+				return lastPeriod;
+			}
+			
+			int periodSampleSize = periodSampleSizes[note];
+			TimbreKey timbreKey = new TimbreKey(
+				timbreFormula, harmonicEngine, byteSize, amplitude, periodSampleSize, marketData, marketDataHash
+			);
+			byte[] period = timbreCache.get(timbreKey);
+			
+			if (period == null) {
+				// create timbre matching input data shape with new length
+				double[] timbre = new double[periodSampleSize];
+				createTimbre(timbreFormula, harmonicEngine, marketData, amplitude, timbre);
+				
+				// quantize one period to the sample size
+				period = (byteSize == 2) ? quantize16(timbre) : quantize8(timbre);
+				timbreCache.put(timbreKey, period);
+			}
+			
+			lastNote = note;
+			lastPeriod = period;
+			return period;
+		}
+	}
+	
+	/**
+	 * Renders a range of a batch of sounds, splitting the range in half until each task has a single sound.
+	 * 
+	 * @since 2026-10-18
+	 */
+	private static class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private List<float[]> marketData;
+		private int from;
+		private int to;
+		/**
+		 * Renders a single sound of the batch, given its market data and index.
+		 */
+		private ObjIntConsumer<float[]> renderer;
+		
+		public BatchTask(List<float[]> marketData, int from, int to, ObjIntConsumer<float[]> renderer) {
+			this.marketData = marketData;
+			this.from = from;
+			this.to = to;
+			this.renderer = renderer;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				renderer.accept(marketData.get(from), from);
+			}
+			else if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				
+				invokeAll(
+					new BatchTask(marketData, from, middle, renderer),
+					new BatchTask(marketData, middle, to, renderer)
+				);
+			}
+		}
+	}
+	
+	/**
+	 * Sound data stream that renders samples from a {@link Melody} only as they are read, so memory use does not
+	 * depend on the sound duration. Supports {@code mark} and {@code reset}, which allows repeated playback.
+	 * 
+	 * @since 2026-10-18
+	 */
+	private static class MelodyInputStream extends InputStream {
+		private Melody melody;
+		private int byteSize;
+		private long length;
+		private long position = 0;
+		private long markPosition = 0;
+		/**
+		 * Holds a single sample when a read does not end on a sample boundary.
+		 */
+		private byte[] sampleBuffer;
+		
+		public MelodyInputStream(Melody melody) {
+			this.melody = melody;
+			byteSize = melody.byteSize;
+			length = (long) melody.getSampleCount() * byteSize;
+			sampleBuffer = new byte[byteSize];
+		}
+		
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return (read(one, 0, 1) == -1) ? -1 : (one[0] & 0xff);
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (position >= length) {
+				return -1;
+			}
+			len = (int) Math.min(len, length - position);
+			
+			int total = 0;
+			while (total < len) {
+				int sample = (int) (position / byteSize);
+				int sampleByte = (int) (position % byteSize);
+				int wholeSamples = (len - total) / byteSize;
 				
-				long elapsed = new Date().getTime() - start;
-				System.out.println("played sound " + repeats + " times for " + elapsed/1000f + " seconds");
-			} 
-			catch (LineUnavailableException e) {
-				System.out.println("speakers no longer available for playback: " + e.getMessage());
-			} 
-			catch (IOException e) {
-				System.out.println("sound read failed: " + e.getMessage());
+				if (sampleByte == 0 && wholeSamples > 0) {
+					// render directly into the caller's buffer
+					melody.render(b, off + total, sample, wholeSamples);
+					total += wholeSamples * byteSize;
+					position += wholeSamples * byteSize;
+				}
+				else {
+					// partial sample
+					melody.render(sampleBuffer, 0, sample, 1);
+					int n = Math.min(byteSize - sampleByte, len - total);
+					java.lang.System.arraycopy(sampleBuffer, sampleByte, b, off + total, n);
+					total += n;
+					position += n;
+				}
 			}
+			
+			return total;
+		}
+		
+		@Override
+		public long skip(long n) {
+			long skipped = Math.max(0, Math.min(n, length - position));
+			position += skipped;
+			return skipped;
+		}
+		
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, length - position);
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+		
+		@Override
+		public synchronized void mark(int readLimit) {
+			markPosition = position;
+		}
+		
+		@Override
+		public synchronized void reset() {
+			position = markPosition;
+		}
+	}
+	
+	/**
+	 * Identifies a quantized timbre period in the {@link #timbreCache}.
+	 * 
+	 * @since 2026-10-18
+	 */
+	public static class TimbreKey {
+		private TimbreFormula timbreFormula;
+		private HarmonicEngine harmonicEngine;
+		private int byteSize;
+		private float amplitude;
+		private int periodSampleSize;
+		/**
+		 * Normalized market data. Must not be modified after the key is created.
+		 */
+		private float[] marketData;
+		private int hash;
+		
+		private TimbreKey(TimbreFormula timbreFormula, HarmonicEngine harmonicEngine, int byteSize, float amplitude, int periodSampleSize, float[] marketData, int marketDataHash) {
+			this.timbreFormula = timbreFormula;
+			this.harmonicEngine = harmonicEngine;
+			this.byteSize = byteSize;
+			this.amplitude = amplitude;
+			this.periodSampleSize = periodSampleSize;
+			this.marketData = marketData;
+			
+			hash = Objects.hash(timbreFormula, harmonicEngine, byteSize, amplitude, periodSampleSize, marketDataHash);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof TimbreKey)) {
+				return false;
+			}
+			
+			TimbreKey key = (TimbreKey) other;
+			return 
+				hash == key.hash &&
+				timbreFormula == key.timbreFormula &&
+				harmonicEngine == key.harmonicEngine &&
+				byteSize == key.byteSize &&
+				amplitude == key.amplitude &&
+				periodSampleSize == key.periodSampleSize &&
+				Arrays.equals(marketData, key.marketData);
 		}
 	}
 	
@@ -602,4 +1376,22 @@ public class MarketSynth {
 			}
 		}
 	}
+	
+	/**
+	 * How the partials of harmonic timbre formulas are rendered. Both produce the same sound to within 1
+	 * sample value.
+	 * 
+	 * @since 2026-10-18
+	 */
+	public static enum HarmonicEngine {
+		/**
+		 * Sum each partial directly. Cheapest for few partials (below about 50 bars), but cost grows with the
+		 * number of bars.
+		 */
+		ADDITIVE,
+		/**
+		 * Render a spectrum of all partials, whose cost does not depend on the number of bars.
+		 */
+		SPECTRAL
+	}
 }
@@ -0,0 +1,165 @@
+package ogallagher.marketsense;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Pool of recyclable PCM sound data arrays, so that many sounds can be prepared and held at once without a fresh
+ * large allocation for each one.</p>
+ * 
+ * <p>Each {@link PcmBuffer} acquired from the pool has a single owner, which must {@link PcmBuffer#release() release}
+ * it once the sound is no longer needed. Released arrays are kept for reuse by later sounds of the same length, up to
+ * {@link #maxRetainedBytes} in total. The pool is thread-safe.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class PcmBufferPool {
+	/**
+	 * Default maximum size of all arrays kept for reuse, in bytes.
+	 */
+	public static final long MAX_RETAINED_BYTES_DEFAULT = 16 << 20;
+	
+	/**
+	 * Free arrays, by length.
+	 */
+	private ConcurrentHashMap<Integer, ConcurrentLinkedQueue<byte[]>> free = new ConcurrentHashMap<>();
+	private long maxRetainedBytes;
+	private AtomicLong retainedBytes = new AtomicLong(0);
+	
+	private AtomicLong allocationCount = new AtomicLong(0);
+	private AtomicLong reuseCount = new AtomicLong(0);
+	
+	public PcmBufferPool() {
+		this(MAX_RETAINED_BYTES_DEFAULT);
+	}
+	
+	/**
+	 * @param maxRetainedBytes Maximum size of all arrays kept for reuse, in bytes.
+	 */
+	public PcmBufferPool(long maxRetainedBytes) {
+		this.maxRetainedBytes = maxRetainedBytes;
+	}
+	
+	/**
+	 * Take ownership of a buffer of the given length, reusing a released array if available. The contents
+	 * of a reused array are not cleared.
+	 * 
+	 * @param length Buffer length, in bytes.
+	 * 
+	 * @return The buffer, which the caller must release when done.
+	 */
+	public PcmBuffer acquire(int length) {
+		byte[] data = null;
+		
+		ConcurrentLinkedQueue<byte[]> sized = free.get(length);
+		if (sized != null) {
+			data = sized.poll();
+		}
+		
+		if (data != null) {
+			retainedBytes.addAndGet(-data.length);
+			reuseCount.incrementAndGet();
+		}
+		else {
+			data = new byte[length];
+			allocationCount.incrementAndGet();
+		}
+		
+		return new PcmBuffer(this, data);
+	}
+	
+	/**
+	 * Keep a released array for reuse, unless the pool is already full.
+	 * 
+	 * @param data
+	 */
+	private void recycle(byte[] data) {
+		if (retainedBytes.addAndGet(data.length) <= maxRetainedBytes) {
+			ConcurrentLinkedQueue<byte[]> sized = free.get(data.length);
+			if (sized == null) {
+				free.putIfAbsent(data.length, new ConcurrentLinkedQueue<byte[]>());
+				sized = free.get(data.length);
+			}
+			sized.offer(data);
+		}
+		else {
+			// discard to garbage collector
+			retainedBytes.addAndGet(-data.length);
+		}
+	}
+	
+	/**
+	 * @return Number of arrays newly allocated by {@link #acquire(int)}.
+	 */
+	public long getAllocationCount() {
+		return allocationCount.get();
+	}
+	
+	/**
+	 * @return Number of released arrays reused by {@link #acquire(int)}.
+	 */
+	public long getReuseCount() {
+		return reuseCount.get();
+	}
+	
+	/**
+	 * @return Size of all arrays currently kept for reuse, in bytes.
+	 */
+	public long getRetainedBytes() {
+		return retainedBytes.get();
+	}
+	
+	@Override
+	public String toString() {
+		return "PcmBufferPool(allocations=" + allocationCount + ", reuses=" + reuseCount +
+			", retained=" + retainedBytes + "/" + maxRetainedBytes + ")";
+	}
+	
+	/**
+	 * A PCM data array owned by a single sound until released back to its pool.
+	 * 
+	 * @since 2026-10-18
+	 */
+	public static class PcmBuffer {
+		private PcmBufferPool pool;
+		private byte[] data;
+		private AtomicBoolean released = new AtomicBoolean(false);
+		
+		private PcmBuffer(PcmBufferPool pool, byte[] data) {
+			this.pool = pool;
+			this.data = data;
+		}
+		
+		/**
+		 * @return The data array.
+		 * 
+		 * @throws IllegalStateException If the buffer was already released.
+		 */
+		public byte[] getData() throws IllegalStateException {
+			if (released.get()) {
+				throw new IllegalStateException("pcm buffer already released");
+			}
+			return data;
+		}
+		
+		public int getLength() {
+			return data.length;
+		}
+		
+		/**
+		 * Return the data array to the pool. After this the owner must no longer use it, including through any
+		 * stream that reads it. Releasing more than once has no effect.
+		 */
+		public void release() {
+			if (released.compareAndSet(false, true)) {
+				pool.recycle(data);
+			}
+		}
+		
+		public boolean isReleased() {
+			return released.get();
+		}
+	}
+}
@@ -10,6 +10,7 @@ import javax.persistence.Query;
 
 import ogallagher.temp_fx_logger.System;
 import ogallagher.marketsense.persistent.Person;
+import ogallagher.marketsense.persistent.QueryTemplates;
 import ogallagher.marketsense.persistent.Security;
 import ogallagher.marketsense.persistent.TrainingSession;
 import ogallagher.marketsense.persistent.TrainingSessionId;
@@ -23,6 +24,14 @@ import ogallagher.marketsense.util.ConfidenceZscore;
  *
  */
 public class PerformanceSample {
+	private static final int FILTER_PERSON = 1;
+	private static final int FILTER_SECURITY = 1 << 1;
+	private static final int FILTER_START_DATE = 1 << 2;
+	private static final int FILTER_END_DATE = 1 << 3;
+	private static final int FILTER_BAR_WIDTH = 1 << 4;
+	private static final int FILTER_SAMPLE_SIZE = 1 << 5;
+	private static final int FILTER_SAMPLE_COUNT = 1 << 6;
+	
 	private Person person;
 	private Security security;
 	private LocalDate startDate;
@@ -59,54 +68,90 @@ public class PerformanceSample {
 		points = new ArrayList<>();
 	}
 	
-	private Query createQuery(EntityManager dbManager) {
+	/**
+	 * @return Bit mask of the filters that are set, by {@code FILTER_*} flag.
+	 */
+	private int getFilters() {
+		int filters = 0;
+		
+		if (person != null) {
+			filters |= FILTER_PERSON;
+		}
+		if (security != null) {
+			filters |= FILTER_SECURITY;
+		}
+		if (startDate != null) {
+			filters |= FILTER_START_DATE;
+		}
+		if (endDate != null) {
+			filters |= FILTER_END_DATE;
+		}
+		if (barWidth != null) {
+			filters |= FILTER_BAR_WIDTH;
+		}
+		if (sampleSize != -1) {
+			filters |= FILTER_SAMPLE_SIZE;
+		}
+		if (sampleCount != -1) {
+			filters |= FILTER_SAMPLE_COUNT;
+		}
+		
+		return filters;
+	}
+	
+	/**
+	 * @param filters Bit mask of {@code FILTER_*} flags.
+	 * 
+	 * @return Training sessions query with a where clause of the given filters.
+	 */
+	private static String buildQuery(int filters) {
 		String qstr = String.format(
 			"select s from %1$s s",
 			TrainingSession.DB_TABLE
 		);
 		LinkedList<String> wheres = new LinkedList<>();
 		
-		if (person != null) {
+		if ((filters & FILTER_PERSON) != 0) {
 			wheres.add(String.format(
 				"s.%1$s.%2$s = :person",
 				TrainingSession.DB_COL_ID,
 				TrainingSessionId.DB_COL_PERSON
 			));
 		}
-		if (security != null) {
+		if ((filters & FILTER_SECURITY) != 0) {
 			wheres.add(String.format(
 				"s.%1$s = :securitySymbol and s.%2$s = :securityExchange", 
 				TrainingSession.DB_COL_SEC_SYMBOL,
 				TrainingSession.DB_COL_SEC_EXCHANGE
 			));
 		}
-		if (startDate != null) {
+		if ((filters & FILTER_START_DATE) != 0) {
 			wheres.add(String.format(
 				"s.%1$s.%2$s >= :startDate", 
 				TrainingSession.DB_COL_ID,
 				TrainingSessionId.DB_COL_START
 			));
 		}
-		if (endDate != null) {
+		if ((filters & FILTER_END_DATE) != 0) {
 			wheres.add(String.format(
 				"s.%1$s.%2$s <= :endDate", 
 				TrainingSession.DB_COL_ID,
 				TrainingSessionId.DB_COL_START
 			));
 		}
-		if (barWidth != null) {
+		if ((filters & FILTER_BAR_WIDTH) != 0) {
 			wheres.add(String.format(
 				"s.%1$s = :barWidth",
 				TrainingSession.DB_COL_BAR_WIDTH
 			));
 		}
-		if (sampleSize != -1) {
+		if ((filters & FILTER_SAMPLE_SIZE) != 0) {
 			wheres.add(String.format(
 				"s.%1$s = :sampleSize",
 				TrainingSession.DB_COL_SAMPLE_SIZE
 			));
 		}
-		if (sampleCount != -1) {
+		if ((filters & FILTER_SAMPLE_COUNT) != 0) {
 			wheres.add(String.format(
 				"s.%1$s = :sampleCount",
 				TrainingSession.DB_COL_SAMPLE_COUNT
@@ -132,8 +177,16 @@ public class PerformanceSample {
 			TrainingSessionId.DB_COL_START
 		);
 		
-		Query query = dbManager.createQuery(qstr);
-		System.out.println("debug will execute db query:\n" + qstr);
+		return qstr;
+	}
+	
+	private Query createQuery(EntityManager dbManager) {
+		int filters = getFilters();
+		Query query = QueryTemplates.createQuery(
+			dbManager, 
+			"PerformanceSample." + Integer.toBinaryString(filters), 
+			() -> buildQuery(filters)
+		);
 		
 		if (person != null) {
 			query.setParameter("person", person);
@@ -0,0 +1,492 @@
+package ogallagher.marketsense;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import ogallagher.temp_fx_logger.System;
+
+/**
+ * <p>Long-lived audio output, which keeps one playback line open and started for the life of the program, and
+ * plays sounds submitted from any thread in order.</p>
+ * 
+ * <p>Requests are passed to the single playback thread through a lock-free queue, and the thread parks while
+ * there is nothing to play. Because the line is never closed between sounds, a new sound only waits for the
+ * line's small buffer, rather than for a new thread to open and start the line.</p>
+ * 
+ * <p>Press-to-sound latency is measured for each request, from when it was submitted to when the line's frame
+ * position reaches its first frame.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class PlaybackService {
+	/**
+	 * Default size of the playback line buffer, in milliseconds. Sound written to the line waits behind at most
+	 * this much audio, and cancellation discards at most this much.
+	 */
+	public static final int LINE_BUFFER_MILLIS_DEFAULT = 50;
+	/**
+	 * Number of repeats for a sound that plays until cancelled.
+	 */
+	public static final int REPEAT_FOREVER = -1;
+	/**
+	 * Size of each write to the line, in milliseconds, which is how often the playback thread checks for
+	 * cancellation.
+	 */
+	private static final int CHUNK_MILLIS = 10;
+	/**
+	 * How often to check whether a sound has reached the speakers, once written.
+	 */
+	private static final long LATENCY_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	private AudioFormat audioFormat;
+	private int lineBufferMillis;
+	/**
+	 * Used only by the playback thread.
+	 */
+	private SourceDataLine line = null;
+	private volatile boolean lineOpen = false;
+	private byte[] chunk;
+	
+	private ConcurrentLinkedQueue<PlayRequest> requests = new ConcurrentLinkedQueue<>();
+	private AtomicReference<PlayRequest> current = new AtomicReference<>(null);
+	/**
+	 * Incremented by each {@link #cancel()}, which cancels all requests submitted before it, including one
+	 * the playback thread has taken from the queue but not yet made {@link #current}.
+	 */
+	private AtomicLong cancelEpoch = new AtomicLong(0);
+	private Thread playbackThread = null;
+	private volatile boolean running = false;
+	
+	/**
+	 * Request written to the line, which has not yet reached the speakers.
+	 */
+	private PlayRequest unsounded = null;
+	/**
+	 * Line frame position at which {@link #unsounded} begins.
+	 */
+	private long unsoundedFrame;
+	
+	private AtomicLong latencyCount = new AtomicLong(0);
+	private AtomicLong latencyTotalNanos = new AtomicLong(0);
+	private AtomicLong latencyMaxNanos = new AtomicLong(0);
+	private AtomicLong latencyLastNanos = new AtomicLong(0);
+	
+	public PlaybackService(AudioFormat audioFormat) {
+		this(audioFormat, LINE_BUFFER_MILLIS_DEFAULT);
+	}
+	
+	/**
+	 * @param audioFormat Format of all sounds played.
+	 * @param lineBufferMillis Size of the playback line buffer, in milliseconds.
+	 */
+	public PlaybackService(AudioFormat audioFormat, int lineBufferMillis) {
+		this.audioFormat = audioFormat;
+		this.lineBufferMillis = lineBufferMillis;
+		
+		chunk = new byte[millisToBytes(CHUNK_MILLIS)];
+	}
+	
+	/**
+	 * Start the playback thread, which opens and warms up the line. Does nothing if already started.
+	 */
+	public synchronized void start() {
+		if (playbackThread == null) {
+			running = true;
+			playbackThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					loop();
+				}
+			}, "marketsense-playback");
+			playbackThread.setDaemon(true);
+			playbackThread.start();
+		}
+	}
+	
+	/**
+	 * Cancel all sounds, stop the playback thread, and close the line.
+	 */
+	public synchronized void close() {
+		if (playbackThread != null) {
+			cancel();
+			running = false;
+			LockSupport.unpark(playbackThread);
+			playbackThread = null;
+		}
+	}
+	
+	/**
+	 * Play a sound after those already submitted.
+	 * 
+	 * @param soundStream Sound, which is reset before playing.
+	 * @param repeats Number of times to play the sound, or {@link #REPEAT_FOREVER}.
+	 * 
+	 * @return The request, which can be cancelled.
+	 */
+	public PlayRequest play(AudioInputStream soundStream, int repeats) {
+		start();
+		
+		PlayRequest request = new PlayRequest(soundStream, repeats, cancelEpoch.get());
+		requests.offer(request);
+		LockSupport.unpark(playbackThread);
+		
+		return request;
+	}
+	
+	/**
+	 * Cancel the current and all submitted sounds, and play the given sound instead.
+	 * 
+	 * @param soundStream
+	 * @param repeats
+	 * 
+	 * @return The request, which can be cancelled.
+	 */
+	public PlayRequest replace(AudioInputStream soundStream, int repeats) {
+		cancel();
+		return play(soundStream, repeats);
+	}
+	
+	/**
+	 * Cancel the current and all submitted sounds. Buffered sound already written to the line is discarded.
+	 */
+	public void cancel() {
+		cancelEpoch.incrementAndGet();
+		
+		PlayRequest request = requests.poll();
+		while (request != null) {
+			request.cancel();
+			request = requests.poll();
+		}
+		
+		request = current.get();
+		if (request != null) {
+			request.cancel();
+		}
+	}
+	
+	/**
+	 * Cancel like {@link #cancel()}, then wait until the playback thread has stopped reading the current sound, so
+	 * that its sound data can be reused.
+	 * 
+	 * @param timeoutMillis
+	 * 
+	 * @return Whether the current sound, if any, stopped before the timeout.
+	 */
+	public boolean cancelAndAwait(long timeoutMillis) {
+		PlayRequest request = current.get();
+		cancel();
+		
+		long deadline = java.lang.System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while (request != null && !request.isFinished()) {
+			if (java.lang.System.nanoTime() >= deadline) {
+				return false;
+			}
+			LockSupport.parkNanos(this, LATENCY_POLL_NANOS);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @return Whether the playback line is open, being {@code false} if speakers are not connected.
+	 */
+	public boolean isLineOpen() {
+		return lineOpen;
+	}
+	
+	/**
+	 * @return The sound being played, or {@code null} if idle.
+	 */
+	public PlayRequest getCurrent() {
+		return current.get();
+	}
+	
+	private void loop() {
+		openLine();
+		
+		while (running) {
+			PlayRequest request = requests.poll();
+			
+			if (request == null) {
+				if (unsounded != null) {
+					// wait for the last sound to reach the speakers
+					checkLatency();
+					LockSupport.parkNanos(this, LATENCY_POLL_NANOS);
+				}
+				else {
+					LockSupport.park(this);
+				}
+			}
+			else if (!isCancelled(request)) {
+				play(request);
+			}
+			else {
+				request.finish();
+			}
+		}
+		
+		if (line != null) {
+			line.stop();
+			line.flush();
+			line.close();
+			line = null;
+			lineOpen = false;
+		}
+		System.out.println("DEBUG playback service stopped");
+	}
+	
+	/**
+	 * Open and start the line, and prime it with a short silence so the first sound does not pay for the
+	 * device startup.
+	 */
+	private void openLine() {
+		DataLine.Info lineInfo = new DataLine.Info(SourceDataLine.class, audioFormat);
+		try {
+			line = (SourceDataLine) AudioSystem.getLine(lineInfo);
+			line.open(audioFormat, millisToBytes(lineBufferMillis));
+			line.start();
+			
+			byte[] silence = new byte[chunk.length];
+			line.write(silence, 0, silence.length);
+			
+			lineOpen = true;
+			System.out.println("DEBUG opened playback line with buffer size " + line.getBufferSize());
+		}
+		catch (LineUnavailableException | IllegalArgumentException e) {
+			System.out.println("ERROR no playback line available: " + e.getMessage());
+			line = null;
+		}
+	}
+	
+	private void play(PlayRequest request) {
+		current.set(request);
+		
+		if (line == null) {
+			openLine();
+		}
+		if (line == null) {
+			System.out.println("WARNING speakers not connected; skipping playback");
+			current.compareAndSet(request, null);
+			request.finish();
+			return;
+		}
+		
+		// measure the previous sound if it has sounded, as this one will replace it as unsounded
+		checkLatency();
+		
+		int frameSize = audioFormat.getFrameSize();
+		AudioInputStream soundStream = request.getSoundStream();
+		try {
+			soundStream.reset();
+			
+			boolean first = true;
+			int played = 0;
+			int repeats = request.getRepeats();
+			while (!isCancelled(request) && (repeats == REPEAT_FOREVER || played < repeats)) {
+				int newBytes = soundStream.read(chunk);
+				
+				if (newBytes == -1) {
+					soundStream.reset();
+					played++;
+					
+					if (first) {
+						// empty sound
+						break;
+					}
+				}
+				else if (newBytes > 0) {
+					if (first) {
+						// the sound starts after everything already queued in the line
+						long queued = (line.getBufferSize() - line.available()) / frameSize;
+						unsounded = request;
+						unsoundedFrame = line.getLongFramePosition() + queued;
+						first = false;
+					}
+					
+					line.write(chunk, 0, newBytes);
+					
+					if (unsounded == request) {
+						checkLatency();
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			System.out.println("ERROR sound read failed: " + e.getMessage());
+		}
+		
+		if (isCancelled(request)) {
+			// discard sound already written
+			line.stop();
+			line.flush();
+			line.start();
+			
+			if (unsounded == request) {
+				unsounded = null;
+			}
+		}
+		
+		current.compareAndSet(request, null);
+		request.finish();
+	}
+	
+	/**
+	 * @param request
+	 * 
+	 * @return Whether the request was cancelled, either directly or by {@link #cancel()}.
+	 */
+	private boolean isCancelled(PlayRequest request) {
+		if (request.getEpoch() < cancelEpoch.get()) {
+			request.cancel();
+		}
+		return request.isCancelled();
+	}
+	
+	/**
+	 * Record the latency of the {@link #unsounded} request, if the line has reached its first frame.
+	 */
+	private void checkLatency() {
+		if (unsounded != null && line.getLongFramePosition() >= unsoundedFrame) {
+			long latency = java.lang.System.nanoTime() - unsounded.getSubmitNanos();
+			unsounded.setLatencyNanos(latency);
+			unsounded = null;
+			
+			latencyLastNanos.set(latency);
+			latencyTotalNanos.addAndGet(latency);
+			latencyCount.incrementAndGet();
+			
+			long max = latencyMaxNanos.get();
+			while (latency > max && !latencyMaxNanos.compareAndSet(max, latency)) {
+				max = latencyMaxNanos.get();
+			}
+		}
+	}
+	
+	private int millisToBytes(int millis) {
+		int frames = (int) (audioFormat.getFrameRate() * millis / 1000);
+		return Math.max(1, frames) * audioFormat.getFrameSize();
+	}
+	
+	/**
+	 * @return Number of requests whose latency was measured.
+	 */
+	public long getLatencyCount() {
+		return latencyCount.get();
+	}
+	
+	/**
+	 * @return Latency of the last measured request, in milliseconds.
+	 */
+	public double getLastLatencyMillis() {
+		return latencyLastNanos.get() / 1e6;
+	}
+	
+	/**
+	 * @return Mean latency of all measured requests, in milliseconds.
+	 */
+	public double getMeanLatencyMillis() {
+		long count = latencyCount.get();
+		return count == 0 ? 0 : latencyTotalNanos.get() / 1e6 / count;
+	}
+	
+	/**
+	 * @return Max latency of all measured requests, in milliseconds.
+	 */
+	public double getMaxLatencyMillis() {
+		return latencyMaxNanos.get() / 1e6;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format(
+			"PlaybackService(latency count=%d last=%.1fms mean=%.1fms max=%.1fms)",
+			getLatencyCount(), getLastLatencyMillis(), getMeanLatencyMillis(), getMaxLatencyMillis()
+		);
+	}
+	
+	/**
+	 * A sound submitted for playback.
+	 * 
+	 * @since 2026-10-18
+	 */
+	public static class PlayRequest {
+		private AudioInputStream soundStream;
+		private int repeats;
+		private long submitNanos;
+		/**
+		 * Value of {@link PlaybackService#cancelEpoch} when submitted.
+		 */
+		private long epoch;
+		private volatile boolean cancelled = false;
+		private volatile boolean finished = false;
+		private volatile long latencyNanos = -1;
+		
+		private PlayRequest(AudioInputStream soundStream, int repeats, long epoch) {
+			this.soundStream = soundStream;
+			this.repeats = repeats;
+			this.epoch = epoch;
+			this.submitNanos = java.lang.System.nanoTime();
+		}
+		
+		public AudioInputStream getSoundStream() {
+			return soundStream;
+		}
+		
+		public int getRepeats() {
+			return repeats;
+		}
+		
+		public long getSubmitNanos() {
+			return submitNanos;
+		}
+		
+		private long getEpoch() {
+			return epoch;
+		}
+		
+		/**
+		 * Stop the sound if playing, or skip it if not yet started.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+		
+		public boolean isCancelled() {
+			return cancelled;
+		}
+		
+		private void finish() {
+			finished = true;
+		}
+		
+		/**
+		 * @return Whether the sound has finished being written to the line, or was cancelled or skipped.
+		 */
+		public boolean isFinished() {
+			return finished;
+		}
+		
+		private void setLatencyNanos(long latencyNanos) {
+			this.latencyNanos = latencyNanos;
+		}
+		
+		/**
+		 * @return Time from submission until the sound reached the speakers, in nanoseconds, or {@code -1} if
+		 * not yet measured.
+		 */
+		public long getLatencyNanos() {
+			return latencyNanos;
+		}
+	}
+}
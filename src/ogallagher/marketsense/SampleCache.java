@@ -0,0 +1,236 @@
+package ogallagher.marketsense;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ogallagher.marketsense.persistent.Security;
+import ogallagher.marketsense.util.LruCache;
+import ogallagher.temp_fx_logger.System;
+
+/**
+ * <p>Shared cache of the rendered sounds of prepared {@link MarketSample market samples}, so that a window of bars
+ * prepared again, whether in the same session or a later one, is not normalized and synthesized again.</p>
+ * 
+ * <p>Sounds are keyed by the bars of the sample window, a hash of their market data, and the
+ * {@link MarketSynth#getSettingsId() synth settings}, so a window whose bars were since replaced is synthesized
+ * again. They are kept in memory within a byte budget, evicting the least recently used. If the disk tier is
+ * enabled, every cached sound is also written to the {@link #DISK_DIR} folder of the sounds dir, where a sound
+ * evicted from memory, or cached by an earlier run of the program, is found again.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class SampleCache {
+	public static final long MAX_BYTES_DEFAULT = 32L << 20;
+	public static final String DISK_DIR = "sample_cache";
+	private static final String FILE_EXT = ".pcm";
+	/**
+	 * Approximate memory of a cache entry besides its sound data.
+	 */
+	private static final int ENTRY_BYTES = 96;
+	
+	private static volatile LruCache<String,byte[]> sounds = createCache(MAX_BYTES_DEFAULT);
+	
+	/**
+	 * Folder of the disk tier, or {@code null} if disabled.
+	 */
+	private static volatile File diskDir = null;
+	private static final AtomicLong diskHits = new AtomicLong(0);
+	private static final AtomicLong diskWrites = new AtomicLong(0);
+	
+	private static boolean enabled = true;
+	
+	private static LruCache<String,byte[]> createCache(long maxBytes) {
+		return new LruCache<>(
+			maxBytes,
+			new LruCache.Weigher<byte[]>() {
+				@Override
+				public long weigh(byte[] soundData) {
+					return soundData.length + ENTRY_BYTES;
+				}
+			}
+		);
+	}
+	
+	/**
+	 * @param security
+	 * @param barWidth
+	 * @param startEpoch Epoch seconds of the first bar of the sample window.
+	 * @param sampleSize Number of bars in the sample window, not including the future.
+	 * @param marketData Raw market datapoints of the sample window, not including the future.
+	 * @param marketSynth
+	 * 
+	 * @return Cache key of the sample window's sound, which is also a valid filename.
+	 */
+	public static String key(
+			Security security, String barWidth, long startEpoch, int sampleSize, float[] marketData, 
+			MarketSynth marketSynth
+		) {
+		return new StringBuilder()
+			.append(security.getSymbol())
+			.append('_')
+			.append(security.getExchange())
+			.append('_')
+			.append(barWidth)
+			.append('_')
+			.append(startEpoch)
+			.append('_')
+			.append(sampleSize)
+			.append('_')
+			.append(Integer.toHexString(Arrays.hashCode(marketData)))
+			.append('_')
+			.append(marketSynth.getSettingsId())
+			.toString()
+			.replaceAll("[^\\w.\\-]", "-");
+	}
+	
+	/**
+	 * @param key
+	 * @param marketSynth Synth whose settings match the key.
+	 * 
+	 * @return A copy of the cached sound, which the caller must release, or {@code null} if not cached.
+	 */
+	public static SynthSound get(String key, MarketSynth marketSynth) {
+		LruCache<String,byte[]> sounds = SampleCache.sounds;
+		byte[] soundData = sounds.get(key);
+		
+		if (soundData == null && diskDir != null) {
+			soundData = read(key);
+			
+			if (soundData != null) {
+				diskHits.incrementAndGet();
+				sounds.put(key, soundData);
+			}
+		}
+		
+		return soundData == null ? null : marketSynth.loadSound(soundData);
+	}
+	
+	/**
+	 * Cache a copy of a sound. Streamed sounds are not cached.
+	 * 
+	 * @param key
+	 * @param sound
+	 */
+	public static void put(String key, SynthSound sound) {
+		byte[] soundData = sound.copyData();
+		
+		if (soundData != null) {
+			sounds.put(key, soundData);
+			
+			if (diskDir != null) {
+				write(key, soundData);
+			}
+		}
+	}
+	
+	private static byte[] read(String key) {
+		File file = new File(diskDir, key + FILE_EXT);
+		
+		if (file.exists()) {
+			try {
+				return Files.readAllBytes(file.toPath());
+			}
+			catch (IOException e) {
+				System.out.println("ERROR failed to read cached sound " + file.getPath() + ": " + e.getMessage());
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Write sound data to the disk tier through a temporary file, so a concurrent read never finds a partial file.
+	 * 
+	 * @param key
+	 * @param soundData
+	 */
+	private static void write(String key, byte[] soundData) {
+		File file = new File(diskDir, key + FILE_EXT);
+		
+		if (!file.exists()) {
+			File temp = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+			
+			try {
+				Files.write(temp.toPath(), soundData);
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				diskWrites.incrementAndGet();
+			}
+			catch (IOException e) {
+				System.out.println("ERROR failed to write cached sound " + file.getPath() + ": " + e.getMessage());
+				temp.delete();
+			}
+		}
+	}
+	
+	/**
+	 * Replace the memory tier with an empty one of the given budget.
+	 * 
+	 * @param maxBytes Maximum memory of cached sounds.
+	 */
+	public static void setMaxBytes(long maxBytes) {
+		sounds = createCache(maxBytes);
+	}
+	
+	/**
+	 * @param enabled Whether cached sounds are also written to and read from the {@link #DISK_DIR} folder of the
+	 * sounds dir.
+	 */
+	public static void setDiskEnabled(boolean enabled) {
+		if (enabled) {
+			File dir = new File(MarketSynth.getSoundsDir(), DISK_DIR);
+			if (dir.mkdirs()) {
+				System.out.println("INFO created sample cache dir at " + dir.getAbsolutePath());
+			}
+			diskDir = dir;
+		}
+		else {
+			diskDir = null;
+		}
+	}
+	
+	public static boolean isDiskEnabled() {
+		return diskDir != null;
+	}
+	
+	/**
+	 * Empty the memory tier. The disk tier is kept.
+	 */
+	public static void clear() {
+		sounds.clear();
+	}
+	
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	
+	public static void setEnabled(boolean enabled) {
+		SampleCache.enabled = enabled;
+	}
+	
+	/**
+	 * @return Memory tier, for inspecting its weight, hit, miss, and eviction counts.
+	 */
+	public static LruCache<String,byte[]> getMemoryTier() {
+		return sounds;
+	}
+	
+	public static long getDiskHits() {
+		return diskHits.get();
+	}
+	
+	public static long getDiskWrites() {
+		return diskWrites.get();
+	}
+	
+	/**
+	 * @return Summary of both tiers, for logging.
+	 */
+	public static String getSummary() {
+		return "sample cache: " + sounds +
+			(diskDir != null ? ", disk hits=" + diskHits.get() + ", disk writes=" + diskWrites.get() : "");
+	}
+}
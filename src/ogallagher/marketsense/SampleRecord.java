@@ -0,0 +1,114 @@
+package ogallagher.marketsense;
+
+import java.awt.Color;
+import java.time.LocalDateTime;
+
+import ogallagher.marketsense.persistent.BarSeries;
+import ogallagher.marketsense.persistent.Security;
+
+/**
+ * <p>Compact, immutable record of a prepared {@link MarketSample}, for keeping the history of many sessions in
+ * memory for replay and analysis.</p>
+ * 
+ * <p>A record holds only the sample closes, the epoch of its first bar, and its future, with no trade bar entities,
+ * color, or sound. The color is derived from the future movement, and the sound is synthesized again from the
+ * closes when requested.</p>
+ * 
+ * @since 2026-10-18
+ */
+public final class SampleRecord {
+	private final Security security;
+	private final String barWidth;
+	/**
+	 * Datetime of the first sample bar, as epoch seconds.
+	 * 
+	 * @see BarSeries#toEpoch(LocalDateTime)
+	 */
+	private final long startEpoch;
+	/**
+	 * Sample closes, not including the future.
+	 */
+	private final float[] closes;
+	private final float futureClose;
+	private final float futureMovement;
+	
+	/**
+	 * @param security
+	 * @param barWidth
+	 * @param startEpoch Epoch seconds of the first sample bar.
+	 * @param closes Sample closes, not including the future, which are not copied and must not change afterward.
+	 * @param futureClose
+	 * @param futureMovement
+	 */
+	public SampleRecord(
+			Security security, String barWidth, long startEpoch,
+			float[] closes, float futureClose, float futureMovement
+		) {
+		this.security = security;
+		this.barWidth = barWidth;
+		this.startEpoch = startEpoch;
+		this.closes = closes;
+		this.futureClose = futureClose;
+		this.futureMovement = futureMovement;
+	}
+	
+	/**
+	 * Synthesize the sound of the sample again.
+	 * 
+	 * @param marketSynth
+	 * 
+	 * @return New sound, which the caller must {@link SynthSound#release() release}.
+	 */
+	public SynthSound synthesize(MarketSynth marketSynth) {
+		return marketSynth.synthesizeSound(closes, true);
+	}
+	
+	/**
+	 * @see MarketSample#evalGuess(double)
+	 */
+	public double evalGuess(double guess) {
+		return 1 - Math.abs(guess - futureMovement);
+	}
+	
+	public Security getSecurity() {
+		return security;
+	}
+	
+	public String getBarWidth() {
+		return barWidth;
+	}
+	
+	public long getStartEpoch() {
+		return startEpoch;
+	}
+	
+	public LocalDateTime getStart() {
+		return BarSeries.toDatetime(startEpoch);
+	}
+	
+	public int size() {
+		return closes.length;
+	}
+	
+	public float getClose(int i) {
+		return closes[i];
+	}
+	
+	public float getFutureClose() {
+		return futureClose;
+	}
+	
+	public float getFutureMovement() {
+		return futureMovement;
+	}
+	
+	public Color getColor() {
+		return MarketSample.valueToColor(futureMovement, MarketSample.COLOR_LOW, MarketSample.COLOR_HIGH);
+	}
+	
+	@Override
+	public String toString() {
+		return "SampleRecord(security=" + security + ", start=" + getStart() + ", size=" + closes.length +
+			", futureMovement=" + futureMovement + ")";
+	}
+}
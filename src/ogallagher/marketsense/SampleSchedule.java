@@ -0,0 +1,166 @@
+package ogallagher.marketsense;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import ogallagher.marketsense.persistent.BarSeries;
+import ogallagher.marketsense.persistent.Security;
+import ogallagher.marketsense.util.DatetimeUtils;
+import ogallagher.temp_fx_logger.System;
+import ogallagher.twelvedata_client_java.TwelvedataInterface.BarInterval;
+
+/**
+ * <p>Seeded schedule of the sample window ends of a training session, within the bounds of its market universe.</p>
+ * 
+ * <p>The same security, bar width, sample size, sample count, lookback, seed, and universe bounds always give the
+ * same window ends, in the same order, so the samples of a session can be chosen and prepared before it starts,
+ * and a session can be repeated.</p>
+ * 
+ * <p>Given the bar series of the universe, window ends are drawn uniformly over the indices of the bars present,
+ * so that every window is full and followed by its future, regardless of weekends, holidays, and gaps in the data.
+ * Otherwise, ends are drawn uniformly over the hours of the universe.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class SampleSchedule {
+	private String barWidth;
+	private int sampleSize;
+	private int sampleCount;
+	private long seed;
+	
+	/**
+	 * Earliest datetime where a sample can be taken.
+	 */
+	private LocalDateTime after;
+	/**
+	 * Latest datetime where a sample can be taken, being the first datetime within that corresponding sample.
+	 */
+	private LocalDateTime before;
+	
+	/**
+	 * Bars of the universe, or {@code null} if unknown.
+	 */
+	private BarSeries coverage;
+	/**
+	 * Series index of the first valid window end in {@link #coverage}.
+	 */
+	private int firstEnd;
+	/**
+	 * Number of valid window ends in {@link #coverage}, from {@link #firstEnd}.
+	 */
+	private int endCount;
+	
+	private Random random;
+	/**
+	 * Window ends generated so far, in order.
+	 */
+	private ArrayList<LocalDateTime> ends;
+	
+	/**
+	 * @param security
+	 * @param barWidth
+	 * @param sampleSize Number of bars in a sample, not including the future.
+	 * @param sampleCount Number of samples in the session.
+	 * @param maxLookbackMonths
+	 * @param seed
+	 * @param after Earliest datetime where a sample can be taken.
+	 * @param before Latest datetime where a sample can begin.
+	 * @param coverage Bars of the universe, or {@code null} to draw ends by hour.
+	 */
+	public SampleSchedule(
+			Security security, String barWidth, int sampleSize, int sampleCount, int maxLookbackMonths, long seed,
+			LocalDateTime after, LocalDateTime before, BarSeries coverage
+		) {
+		this.barWidth = barWidth;
+		this.sampleSize = sampleSize;
+		this.sampleCount = sampleCount;
+		this.seed = seed;
+		this.after = after;
+		this.before = before;
+		
+		// every parameter of the session contributes to the sequence, using only hashes that are stable across runs
+		random = new Random(
+			seed * 31 + Objects.hash(
+				security.getSymbol(), security.getExchange(), barWidth, sampleSize, sampleCount, maxLookbackMonths
+			)
+		);
+		ends = new ArrayList<>(sampleCount);
+		
+		if (coverage != null) {
+			// a window ending at bar i is bars i-sampleSize .. i, where bar i is the future
+			firstEnd = Math.max(coverage.ceiling(after), 0) + sampleSize;
+			int lastEnd = coverage.floor(BarInterval.offsetBars(before, barWidth, sampleSize));
+			endCount = lastEnd - firstEnd + 1;
+			
+			if (endCount > 0) {
+				this.coverage = coverage;
+			}
+			else {
+				System.out.println(
+					"WARNING universe " + coverage + " has no full windows of " + sampleSize + " bars after " + after 
+					+ "; drawing sample ends by hour"
+				);
+			}
+		}
+	}
+	
+	/**
+	 * @param index Sample number, from {@code 0}.
+	 * 
+	 * @return End of the sample window, being the datetime of its future bar if the {@link #coverage} is known, or
+	 * else a random hour within the universe bounds.
+	 */
+	public synchronized LocalDateTime getEnd(int index) {
+		while (ends.size() <= index) {
+			if (coverage != null) {
+				ends.add(coverage.getDatetime(firstEnd + random.nextInt(endCount)));
+			}
+			else {
+				int hours = (int) (Duration.between(after, before).getSeconds() / DatetimeUtils.SECS_PER_HR);
+				int sampleOffsetHours = hours > 0 ? random.nextInt(hours) : 0;
+				
+				ends.add(BarInterval.offsetBars(after.plusHours(sampleOffsetHours), barWidth, sampleSize));
+			}
+		}
+		
+		return ends.get(index);
+	}
+	
+	/**
+	 * @return Ends of every sample window in the session, in order.
+	 */
+	public List<LocalDateTime> getEnds() {
+		List<LocalDateTime> all = new ArrayList<>(sampleCount);
+		for (int s=0; s<sampleCount; s++) {
+			all.add(getEnd(s));
+		}
+		return all;
+	}
+	
+	public int getSampleCount() {
+		return sampleCount;
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+	
+	public LocalDateTime getAfter() {
+		return after;
+	}
+	
+	public LocalDateTime getBefore() {
+		return before;
+	}
+	
+	/**
+	 * @return Whether ends are drawn over the bars present in the universe.
+	 */
+	public boolean isCoverageAware() {
+		return coverage != null;
+	}
+}
@@ -0,0 +1,473 @@
+package ogallagher.marketsense;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import ogallagher.marketsense.MarketSynth.AudioChannels;
+import ogallagher.marketsense.util.SpscRing;
+import ogallagher.temp_fx_logger.System;
+
+/**
+ * <p>Real-time mixer that plays several mono sounds at once, each panned within a
+ * {@link AudioChannels#STEREO stereo} output line. For example, the current sample against a reference index,
+ * or several securities side by side.</p>
+ * 
+ * <p>Each {@link Voice} has a feeder thread that decodes its sound into a {@link SpscRing}, of which the feeder
+ * is the only producer and the mixer thread is the only consumer. The mixer thread sums all voices into
+ * preallocated buffers and writes them to the line, so it never locks or allocates.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class SoundMixer {
+	/**
+	 * Maximum number of voices playing at once.
+	 */
+	public static final int MAX_VOICES = 8;
+	/**
+	 * Pan of a voice in the left channel only.
+	 */
+	public static final float PAN_LEFT = -1;
+	/**
+	 * Pan of a voice centered between both channels.
+	 */
+	public static final float PAN_CENTER = 0;
+	/**
+	 * Pan of a voice in the right channel only.
+	 */
+	public static final float PAN_RIGHT = 1;
+	/**
+	 * Default size of the output line buffer, in milliseconds.
+	 */
+	public static final int LINE_BUFFER_MILLIS_DEFAULT = 50;
+	/**
+	 * Frames mixed per write to the line.
+	 */
+	private static final int BLOCK_FRAMES = 256;
+	/**
+	 * Samples buffered ahead by each voice's feeder.
+	 */
+	private static final int VOICE_RING_SAMPLES = 8192;
+	/**
+	 * How long a feeder waits for space in its full ring.
+	 */
+	private static final long FEEDER_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+	
+	private AudioFormat voiceFormat;
+	private AudioFormat outputFormat;
+	private int lineBufferMillis;
+	private SourceDataLine line = null;
+	private volatile boolean lineOpen = false;
+	
+	private AtomicReferenceArray<Voice> voices = new AtomicReferenceArray<>(MAX_VOICES);
+	private Thread mixerThread = null;
+	private volatile boolean running = false;
+	
+	// mixer thread buffers
+	private float[] voiceBlock = new float[BLOCK_FRAMES];
+	private float[] left = new float[BLOCK_FRAMES];
+	private float[] right = new float[BLOCK_FRAMES];
+	private byte[] outputBlock;
+	
+	public SoundMixer(AudioFormat voiceFormat) {
+		this(voiceFormat, LINE_BUFFER_MILLIS_DEFAULT);
+	}
+	
+	/**
+	 * @param voiceFormat Format of all voice sounds, which must be mono signed PCM.
+	 * @param lineBufferMillis Size of the output line buffer, in milliseconds.
+	 * 
+	 * @throws IllegalArgumentException If the voice format is not mono signed PCM of 8 or 16 bits.
+	 */
+	public SoundMixer(AudioFormat voiceFormat, int lineBufferMillis) throws IllegalArgumentException {
+		if (voiceFormat.getChannels() != AudioChannels.MONO.getCount()) {
+			throw new IllegalArgumentException("mixer voices must be mono, not " + voiceFormat.getChannels() + " channels");
+		}
+		if (!AudioFormat.Encoding.PCM_SIGNED.equals(voiceFormat.getEncoding())) {
+			throw new IllegalArgumentException("mixer voices must be signed pcm, not " + voiceFormat.getEncoding());
+		}
+		int sampleBits = voiceFormat.getSampleSizeInBits();
+		if (sampleBits != Byte.SIZE && sampleBits != Short.SIZE) {
+			throw new IllegalArgumentException("mixer voices must be 8 or 16 bit, not " + sampleBits);
+		}
+		
+		this.voiceFormat = voiceFormat;
+		this.lineBufferMillis = lineBufferMillis;
+		
+		outputFormat = new AudioFormat(
+			voiceFormat.getSampleRate(),
+			sampleBits,
+			AudioChannels.STEREO.getCount(),
+			true,
+			voiceFormat.isBigEndian()
+		);
+		outputBlock = new byte[BLOCK_FRAMES * outputFormat.getFrameSize()];
+	}
+	
+	public AudioFormat getOutputFormat() {
+		return outputFormat;
+	}
+	
+	/**
+	 * Start the mixer thread, which opens the output line. Does nothing if already started.
+	 */
+	public synchronized void start() {
+		if (mixerThread == null) {
+			running = true;
+			mixerThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					loop();
+				}
+			}, "marketsense-mixer");
+			mixerThread.setDaemon(true);
+			mixerThread.start();
+		}
+	}
+	
+	/**
+	 * Stop all voices and the mixer thread, and close the line.
+	 */
+	public synchronized void close() {
+		stopAll();
+		
+		if (mixerThread != null) {
+			running = false;
+			LockSupport.unpark(mixerThread);
+			mixerThread = null;
+		}
+	}
+	
+	/**
+	 * Add a voice, which starts playing on the next mixed block.
+	 * 
+	 * @param sound Mono sound in the voice format, which is reset before playing.
+	 * @param pan Position between {@link #PAN_LEFT} and {@link #PAN_RIGHT}.
+	 * @param gain Volume multiplier.
+	 * @param repeats Number of times to play the sound, or {@link PlaybackService#REPEAT_FOREVER}.
+	 * 
+	 * @return The voice, or {@code null} if {@link #MAX_VOICES} are already playing.
+	 */
+	public Voice addVoice(AudioInputStream sound, float pan, float gain, int repeats) {
+		if (mixerThread != null && !running) {
+			System.out.println("WARNING mixer line not available; skipping voice");
+			return null;
+		}
+		
+		Voice voice = new Voice(sound, pan, gain, repeats);
+		
+		for (int v=0; v<MAX_VOICES; v++) {
+			if (voices.compareAndSet(v, null, voice)) {
+				voice.startFeeder();
+				
+				Thread mixer = mixerThread;
+				if (mixer != null) {
+					LockSupport.unpark(mixer);
+				}
+				return voice;
+			}
+		}
+		
+		System.out.println("WARNING mixer already has " + MAX_VOICES + " voices; skipping voice");
+		return null;
+	}
+	
+	/**
+	 * Stop all voices.
+	 */
+	public void stopAll() {
+		for (int v=0; v<MAX_VOICES; v++) {
+			Voice voice = voices.get(v);
+			if (voice != null) {
+				voice.stop();
+			}
+		}
+	}
+	
+	/**
+	 * @return Number of voices not yet finished.
+	 */
+	public int getVoiceCount() {
+		int count = 0;
+		for (int v=0; v<MAX_VOICES; v++) {
+			if (voices.get(v) != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	public boolean isLineOpen() {
+		return lineOpen;
+	}
+	
+	private void loop() {
+		DataLine.Info lineInfo = new DataLine.Info(SourceDataLine.class, outputFormat);
+		try {
+			line = (SourceDataLine) AudioSystem.getLine(lineInfo);
+			int frames = (int) (outputFormat.getFrameRate() * lineBufferMillis / 1000);
+			line.open(outputFormat, Math.max(BLOCK_FRAMES, frames) * outputFormat.getFrameSize());
+			line.start();
+			lineOpen = true;
+			System.out.println("DEBUG opened mixer line with buffer size " + line.getBufferSize());
+		}
+		catch (LineUnavailableException | IllegalArgumentException e) {
+			System.out.println("ERROR no mixer line available: " + e.getMessage());
+			running = false;
+			
+			stopAll();
+			for (int v=0; v<MAX_VOICES; v++) {
+				voices.set(v, null);
+			}
+		}
+		
+		while (running) {
+			if (mix(outputBlock, BLOCK_FRAMES)) {
+				line.write(outputBlock, 0, outputBlock.length);
+			}
+			else {
+				LockSupport.park(this);
+			}
+		}
+		
+		if (line != null) {
+			line.stop();
+			line.flush();
+			line.close();
+			line = null;
+			lineOpen = false;
+		}
+	}
+	
+	/**
+	 * Mix one block of all voices into stereo output samples. Called only by the mixer thread, or by a single
+	 * caller in place of the mixer thread when rendering offline.
+	 * 
+	 * @param output Destination of {@code frames} stereo frames in the {@link #outputFormat}.
+	 * @param frames Number of frames, at most {@link #BLOCK_FRAMES}.
+	 * 
+	 * @return Whether any voice was playing. If not, the output is silence.
+	 */
+	public boolean mix(byte[] output, int frames) {
+		for (int f=0; f<frames; f++) {
+			left[f] = 0;
+			right[f] = 0;
+		}
+		
+		boolean playing = false;
+		for (int v=0; v<MAX_VOICES; v++) {
+			Voice voice = voices.get(v);
+			if (voice == null) {
+				continue;
+			}
+			
+			playing = true;
+			int count = voice.ring.read(voiceBlock, 0, frames);
+			
+			// constant power pan
+			double angle = (voice.pan - PAN_LEFT) * Math.PI / 4;
+			float leftGain = (float) (Math.cos(angle) * voice.gain);
+			float rightGain = (float) (Math.sin(angle) * voice.gain);
+			for (int f=0; f<count; f++) {
+				left[f] += voiceBlock[f] * leftGain;
+				right[f] += voiceBlock[f] * rightGain;
+			}
+			
+			if (voice.stopped || (voice.fed && voice.ring.size() == 0)) {
+				voices.compareAndSet(v, voice, null);
+				voice.finished = true;
+			}
+		}
+		
+		encode(output, frames);
+		return playing;
+	}
+	
+	/**
+	 * Quantize the mixed {@link #left} and {@link #right} channels, clipping to the sample range.
+	 */
+	private void encode(byte[] output, int frames) {
+		boolean bigEndian = outputFormat.isBigEndian();
+		
+		if (outputFormat.getSampleSizeInBits() == Short.SIZE) {
+			for (int f=0, b=0; f<frames; f++, b+=4) {
+				int l = clip(left[f], Short.MAX_VALUE);
+				int r = clip(right[f], Short.MAX_VALUE);
+				
+				if (bigEndian) {
+					output[b] = (byte) (l >> 8);
+					output[b+1] = (byte) l;
+					output[b+2] = (byte) (r >> 8);
+					output[b+3] = (byte) r;
+				}
+				else {
+					output[b] = (byte) l;
+					output[b+1] = (byte) (l >> 8);
+					output[b+2] = (byte) r;
+					output[b+3] = (byte) (r >> 8);
+				}
+			}
+		}
+		else {
+			for (int f=0, b=0; f<frames; f++, b+=2) {
+				output[b] = (byte) clip(left[f], Byte.MAX_VALUE);
+				output[b+1] = (byte) clip(right[f], Byte.MAX_VALUE);
+			}
+		}
+	}
+	
+	private static int clip(float sample, int max) {
+		int value = Math.round(sample * max);
+		return Math.max(-max - 1, Math.min(max, value));
+	}
+	
+	/**
+	 * One mono sound in the mix, with its own pan and gain.
+	 * 
+	 * @since 2026-10-18
+	 */
+	public class Voice {
+		private AudioInputStream sound;
+		private int repeats;
+		private volatile float pan;
+		private volatile float gain;
+		
+		private SpscRing ring = new SpscRing(VOICE_RING_SAMPLES);
+		private Thread feeder;
+		/**
+		 * Whether the feeder has written the whole sound to the ring.
+		 */
+		private volatile boolean fed = false;
+		private volatile boolean stopped = false;
+		private volatile boolean finished = false;
+		
+		private Voice(AudioInputStream sound, float pan, float gain, int repeats) {
+			this.sound = sound;
+			this.gain = gain;
+			this.repeats = repeats;
+			setPan(pan);
+		}
+		
+		private void startFeeder() {
+			feeder = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					feed();
+				}
+			}, "marketsense-mixer-voice");
+			feeder.setDaemon(true);
+			feeder.start();
+		}
+		
+		/**
+		 * Decode the sound into the ring, waiting for space whenever it is full.
+		 */
+		private void feed() {
+			int sampleBytes = voiceFormat.getFrameSize();
+			boolean bigEndian = voiceFormat.isBigEndian();
+			byte[] bytes = new byte[BLOCK_FRAMES * sampleBytes];
+			float[] samples = new float[BLOCK_FRAMES];
+			
+			try {
+				sound.reset();
+				
+				int played = 0;
+				boolean empty = true;
+				while (!stopped && (repeats == PlaybackService.REPEAT_FOREVER || played < repeats)) {
+					int newBytes = sound.read(bytes);
+					
+					if (newBytes == -1) {
+						if (empty) {
+							break;
+						}
+						sound.reset();
+						played++;
+						continue;
+					}
+					empty = false;
+					
+					int count = newBytes / sampleBytes;
+					for (int s=0, b=0; s<count; s++, b+=sampleBytes) {
+						if (sampleBytes == 2) {
+							int sample = bigEndian
+								? (bytes[b] << 8) | (bytes[b+1] & 0xff)
+								: (bytes[b+1] << 8) | (bytes[b] & 0xff);
+							samples[s] = sample / (float) Short.MAX_VALUE;
+						}
+						else {
+							samples[s] = bytes[b] / (float) Byte.MAX_VALUE;
+						}
+					}
+					
+					int written = 0;
+					while (written < count && !stopped) {
+						written += ring.write(samples, written, count - written);
+						if (written < count) {
+							LockSupport.parkNanos(this, FEEDER_WAIT_NANOS);
+						}
+					}
+				}
+			}
+			catch (IOException e) {
+				System.out.println("ERROR mixer voice read failed: " + e.getMessage());
+			}
+			
+			fed = true;
+		}
+		
+		/**
+		 * @param pan Position between {@link SoundMixer#PAN_LEFT} and {@link SoundMixer#PAN_RIGHT}.
+		 */
+		public void setPan(float pan) {
+			this.pan = Math.max(PAN_LEFT, Math.min(PAN_RIGHT, pan));
+		}
+		
+		public float getPan() {
+			return pan;
+		}
+		
+		public void setGain(float gain) {
+			this.gain = gain;
+		}
+		
+		public float getGain() {
+			return gain;
+		}
+		
+		/**
+		 * @return Number of decoded samples waiting to be mixed.
+		 */
+		public int getBuffered() {
+			return ring.size();
+		}
+		
+		/**
+		 * @return Whether the feeder has decoded the whole sound, including repeats.
+		 */
+		public boolean isFed() {
+			return fed;
+		}
+		
+		/**
+		 * Remove the voice from the mix on the next block.
+		 */
+		public void stop() {
+			stopped = true;
+		}
+		
+		/**
+		 * @return Whether the voice was removed from the mix, having played to the end or been stopped.
+		 */
+		public boolean isFinished() {
+			return finished;
+		}
+	}
+}
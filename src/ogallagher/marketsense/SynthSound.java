@@ -0,0 +1,64 @@
+package ogallagher.marketsense;
+
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioInputStream;
+
+/**
+ * A sound rendered by {@link MarketSynth}, which owns its sound data until {@link #release() released}.
+ * 
+ * A buffered sound holds a {@link PcmBufferPool.PcmBuffer} from the synth's pool, while a streamed sound renders
+ * its data as it is read and has nothing to release.
+ * 
+ * @since 2026-10-18
+ */
+public class SynthSound {
+	private AudioInputStream stream;
+	/**
+	 * Backing sound data, or {@code null} if streamed.
+	 */
+	private PcmBufferPool.PcmBuffer buffer;
+	
+	public SynthSound(AudioInputStream stream, PcmBufferPool.PcmBuffer buffer) {
+		this.stream = stream;
+		this.buffer = buffer;
+	}
+	
+	/**
+	 * @return Stream of the sound data, which should be reset before each playback or save.
+	 */
+	public AudioInputStream getStream() {
+		return stream;
+	}
+	
+	/**
+	 * @return Whether the sound is rendered as it is read, instead of being backed by a buffer.
+	 */
+	public boolean isStreamed() {
+		return buffer == null;
+	}
+	
+	/**
+	 * Return the backing buffer to its pool. The {@link #getStream() stream} must not be used afterward.
+	 */
+	public void release() {
+		if (buffer != null) {
+			buffer.release();
+		}
+	}
+	
+	/**
+	 * @return Copy of the sound data, or {@code null} if streamed.
+	 */
+	public byte[] copyData() {
+		if (buffer == null) {
+			return null;
+		}
+		
+		return Arrays.copyOf(buffer.getData(), (int) (stream.getFrameLength() * stream.getFormat().getFrameSize()));
+	}
+	
+	public boolean isReleased() {
+		return buffer != null && buffer.isReleased();
+	}
+}
@@ -0,0 +1,376 @@
+package ogallagher.marketsense;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ogallagher.marketsense.persistent.BarRepository;
+import ogallagher.marketsense.persistent.DbAccess;
+import ogallagher.marketsense.persistent.Security;
+import ogallagher.marketsense.persistent.TrainingSession;
+import ogallagher.marketsense.util.DatetimeUtils;
+import ogallagher.marketsense.util.TokenBucket;
+import ogallagher.temp_fx_logger.System;
+import ogallagher.twelvedata_client_java.TwelvedataClient;
+import ogallagher.twelvedata_client_java.TwelvedataInterface.Failure;
+import ogallagher.twelvedata_client_java.TwelvedataInterface.SecuritySet;
+import ogallagher.twelvedata_client_java.TwelvedataInterface.TimeSeries;
+
+/**
+ * <p>Collects the market universes of many securities and bar widths into a bar repository in the background, so
+ * that later training sessions with them need no market data requests.</p>
+ * 
+ * <p>Series are collected concurrently by a pool of workers, but every market data request first takes a token
+ * from a shared {@link TokenBucket}, whose rate should match the api plan (ex. 8 requests per minute for the free
+ * twelvedata plan), so the workers together run at the full allowed rate without exceeding it. Requests that fail
+ * for exceeding the limit anyway ({@link Failure.ErrorCode#CALL_LIMIT}) or for a lost connection
+ * ({@link Failure.ErrorCode#NO_COMMS}) are retried with exponential backoff. Symbol lookups of securities not yet
+ * in the database take tokens and are retried likewise. Training sessions fetch through the same collector, so they
+ * share its rate limit.</p>
+ * 
+ * <p>Securities are loaded in units of work of {@link DbAccess}, so workers do not share an entity manager. A new
+ * security is looked up and stored while holding the lock of its symbol, so workers collecting several bar widths of
+ * the same symbol store it once.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class UniverseCollector {
+	public static final int CALLS_PER_MINUTE_DEFAULT = 8;
+	public static final int WORKERS_DEFAULT = 4;
+	/**
+	 * Number of times a request is retried before its series is given up.
+	 */
+	public static final int RETRIES_MAX = 6;
+	public static final long BACKOFF_MILLIS_MIN = 2000;
+	public static final long BACKOFF_MILLIS_MAX = 5 * 60 * 1000;
+	/**
+	 * Most bars returned by one time series request, being the latest of the requested interval.
+	 */
+	public static final int TIME_SERIES_ROWS_MAX = 5000;
+	
+	/**
+	 * Lock of each symbol whose security is being created, shared by every collector.
+	 */
+	private static final ConcurrentHashMap<String, Object> symbolLocks = new ConcurrentHashMap<>();
+	
+	private BarRepository barRepository;
+	private TwelvedataClient marketClient;
+	private DbAccess dbAccess;
+	private TokenBucket limiter;
+	
+	private ExecutorService workers;
+	
+	private final AtomicInteger seriesCount = new AtomicInteger(0);
+	private final AtomicInteger seriesDone = new AtomicInteger(0);
+	private final AtomicInteger seriesFailed = new AtomicInteger(0);
+	private final AtomicLong requests = new AtomicLong(0);
+	private final AtomicLong retries = new AtomicLong(0);
+	/**
+	 * Set once a request is refused for the api key, after which queued series are skipped.
+	 */
+	private volatile boolean apiKeyRefused = false;
+	
+	/**
+	 * @param barRepository Destination of collected bars.
+	 * @param marketClient
+	 * @param dbAccess Database of securities.
+	 * @param limiter Rate limit of market data requests.
+	 * @param workerCount Number of series collected at once.
+	 */
+	public UniverseCollector(
+			BarRepository barRepository, TwelvedataClient marketClient, DbAccess dbAccess,
+			TokenBucket limiter, int workerCount
+		) {
+		this.barRepository = barRepository;
+		this.marketClient = marketClient;
+		this.dbAccess = dbAccess;
+		this.limiter = limiter;
+		
+		workers = Executors.newFixedThreadPool(workerCount, (runnable) -> {
+			Thread worker = new Thread(runnable, "universe-collector");
+			// do not keep the program open
+			worker.setDaemon(true);
+			return worker;
+		});
+	}
+	
+	/**
+	 * Fetch bars from the market client within the rate limit, retrying with backoff when the limit was exceeded
+	 * or the connection failed.
+	 * 
+	 * @param symbol
+	 * @param barWidth
+	 * @param start
+	 * @param end
+	 * 
+	 * @return The bars, or the last failure.
+	 * 
+	 * @throws InterruptedException If interrupted while waiting for the rate limit or a retry.
+	 */
+	public TimeSeries fetchTimeSeries(String symbol, String barWidth, LocalDateTime start, LocalDateTime end)
+		throws InterruptedException {
+		TimeSeries timeSeries;
+		int attempt = 0;
+		
+		while (true) {
+			limiter.acquire();
+			requests.incrementAndGet();
+			timeSeries = marketClient.fetchTimeSeries(symbol, barWidth, start, end);
+			
+			if (!timeSeries.isFailure() || attempt >= RETRIES_MAX) {
+				return timeSeries;
+			}
+			
+			Failure failure = (Failure) timeSeries;
+			if (failure.code == Failure.ErrorCode.CALL_LIMIT) {
+				// the limit was exceeded anyway, so every worker waits for a refill
+				limiter.drain();
+			}
+			else if (failure.code != Failure.ErrorCode.NO_COMMS) {
+				return timeSeries;
+			}
+			
+			backoff(attempt++, symbol + " " + barWidth, failure.message);
+		}
+	}
+	
+	/**
+	 * Look up a symbol with the market client within the rate limit, retrying with backoff when the lookup failed.
+	 * 
+	 * @param symbol
+	 * 
+	 * @return The lookup result, or {@code null} if every attempt failed.
+	 * 
+	 * @throws InterruptedException If interrupted while waiting for the rate limit or a retry.
+	 */
+	public SecuritySet lookupSymbol(String symbol) throws InterruptedException {
+		int attempt = 0;
+		
+		while (true) {
+			limiter.acquire();
+			requests.incrementAndGet();
+			SecuritySet securitySet = marketClient.symbolLookup(symbol, Security.SYMBOL_LOOKUP_RESULTS);
+			
+			if ((securitySet != null && securitySet.data != null) || attempt >= RETRIES_MAX) {
+				return securitySet;
+			}
+			
+			// a failed lookup does not give its cause, so assume the limit was exceeded and every worker waits
+			limiter.drain();
+			backoff(attempt++, "symbol lookup of " + symbol, "no result");
+		}
+	}
+	
+	/**
+	 * Load a security from the database, or else look up its symbol within the rate limit and store it.
+	 * 
+	 * @param symbol
+	 * 
+	 * @return The security, or {@code null} if the lookup failed or found no security on a supported exchange.
+	 * 
+	 * @throws InterruptedException If interrupted while waiting for the rate limit or a retry.
+	 */
+	public Security loadSecurity(String symbol) throws InterruptedException {
+		Security security = dbAccess.call((dbManager) -> Security.findSecurity(symbol, dbManager));
+		if (security != null) {
+			return security;
+		}
+		
+		synchronized (symbolLocks.computeIfAbsent(symbol, (key) -> new Object())) {
+			// another worker may have stored it while this one waited
+			security = dbAccess.call((dbManager) -> Security.findSecurity(symbol, dbManager));
+			
+			if (security == null) {
+				Security found = Security.fromSymbolLookup(symbol, lookupSymbol(symbol));
+				
+				if (found != null) {
+					security = dbAccess.transact((dbManager) -> {
+						dbManager.persist(found);
+						return found;
+					});
+				}
+			}
+		}
+		
+		return security;
+	}
+	
+	/**
+	 * Count a retry and wait before it.
+	 * 
+	 * @param attempt Number of retries so far.
+	 * @param request Description of the request, for logging.
+	 * @param reason Why the last attempt failed.
+	 * 
+	 * @throws InterruptedException
+	 */
+	private void backoff(int attempt, String request, String reason) throws InterruptedException {
+		long backoff = getBackoffMillis(attempt);
+		retries.incrementAndGet();
+		System.out.println("WARNING retry " + (attempt + 1) + " of " + request + " in " + backoff + " ms after: " + reason);
+		Thread.sleep(backoff);
+	}
+	
+	/**
+	 * @param attempt Number of retries so far.
+	 * 
+	 * @return Wait before the next retry, doubling with each attempt up to {@link #BACKOFF_MILLIS_MAX}, with random
+	 * jitter so that workers refused together do not retry together.
+	 */
+	private static long getBackoffMillis(int attempt) {
+		long backoff = Math.min(BACKOFF_MILLIS_MIN << Math.min(attempt, 20), BACKOFF_MILLIS_MAX);
+		return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+	}
+	
+	/**
+	 * Queue the market universe of every pair of symbol and bar width for collection, from the lookback until
+	 * two days ago, and return without waiting.
+	 * 
+	 * @param symbols
+	 * @param barWidths
+	 * @param lookbackMonths
+	 */
+	public void collect(List<String> symbols, List<String> barWidths, int lookbackMonths) {
+		// skip repeated symbols
+		Set<String> distinct = new LinkedHashSet<>(symbols);
+		
+		for (String symbol : distinct) {
+			for (String barWidth : barWidths) {
+				seriesCount.incrementAndGet();
+				workers.submit(() -> {
+					boolean collected = false;
+					try {
+						collected = collectSeries(symbol, barWidth, lookbackMonths);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					catch (RuntimeException e) {
+						System.out.println("ERROR failed to collect " + symbol + " " + barWidth + ": " + e);
+					}
+					
+					if (!collected) {
+						seriesFailed.incrementAndGet();
+					}
+					seriesDone.incrementAndGet();
+					System.out.println("INFO " + getSummary());
+				});
+			}
+		}
+		
+		System.out.println("INFO queued " + distinct.size() * barWidths.size() + " market universes for collection");
+	}
+	
+	/**
+	 * @return Whether the universe is now in the bar repository.
+	 */
+	private boolean collectSeries(String symbol, String barWidth, int lookbackMonths) throws InterruptedException {
+		if (apiKeyRefused) {
+			return false;
+		}
+		
+		Security security = loadSecurity(symbol);
+		if (security == null) {
+			System.out.println("ERROR failed to find security " + symbol + " to collect");
+			return false;
+		}
+		
+		// same bounds as the universe of a new training session
+		LocalDateTime now = LocalDateTime.now();
+		LocalDateTime first = DatetimeUtils.forwardFromWeekend(now.minusMonths(lookbackMonths));
+		LocalDateTime last = DatetimeUtils.backwardFromWeekend(now.minusDays(2));
+		
+		List<long[]> missing = TrainingSession.getMissingIntervals(barRepository, security, barWidth, first, last);
+		while (!missing.isEmpty()) {
+			long[] interval = missing.remove(0);
+			TimeSeries timeSeries = fetchTimeSeries(
+				symbol, barWidth,
+				TrainingSession.getIntervalStart(interval), TrainingSession.getIntervalEnd(interval, barWidth)
+			);
+			
+			Failure failure = TrainingSession.storeInterval(barRepository, security, barWidth, interval, timeSeries);
+			if (failure != null) {
+				if (failure.code == Failure.ErrorCode.API_KEY) {
+					apiKeyRefused = true;
+				}
+				System.out.println("ERROR failed to collect " + symbol + " " + barWidth + ": " + failure.message);
+				return false;
+			}
+			
+			// a response cut at the row limit leaves the start of the interval missing
+			missing.addAll(0, TrainingSession.getMissingIntervals(barRepository, security, barWidth, interval));
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Wait for every queued universe to be collected or given up.
+	 * 
+	 * @param timeout
+	 * @param unit
+	 * 
+	 * @return Whether every queued universe was finished before the timeout.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = java.lang.System.nanoTime() + unit.toNanos(timeout);
+		
+		while (seriesDone.get() < seriesCount.get()) {
+			if (java.lang.System.nanoTime() >= deadline) {
+				return false;
+			}
+			Thread.sleep(100);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Stop collecting, abandoning queued universes.
+	 */
+	public void shutdown() {
+		workers.shutdownNow();
+	}
+	
+	public int getSeriesCount() {
+		return seriesCount.get();
+	}
+	
+	public int getSeriesDone() {
+		return seriesDone.get();
+	}
+	
+	public int getSeriesFailed() {
+		return seriesFailed.get();
+	}
+	
+	/**
+	 * @return Fraction of queued universes collected or given up, from {@code 0} to {@code 1}.
+	 */
+	public double getProgress() {
+		int count = seriesCount.get();
+		return count == 0 ? 1 : (double) seriesDone.get() / count;
+	}
+	
+	public TokenBucket getLimiter() {
+		return limiter;
+	}
+	
+	/**
+	 * @return Summary of collection progress, for logging.
+	 */
+	public String getSummary() {
+		return "universe collector: " + seriesDone.get() + "/" + seriesCount.get() + " universes, " +
+			seriesFailed.get() + " failed, " + requests.get() + " requests, " + retries.get() + " retries, " + limiter;
+	}
+}
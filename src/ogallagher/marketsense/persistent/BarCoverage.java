@@ -0,0 +1,59 @@
+package ogallagher.marketsense.persistent;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.*;
+
+/**
+ * An interval of trade bars of one security and bar width that was already fetched from the market data source,
+ * whether or not any bars exist in it.
+ * 
+ * @see BarRepository#getCoverage(Security, String)
+ * 
+ * @since 2026-10-18
+ */
+@Entity
+public class BarCoverage {
+	/**
+	 * Name of table in database.
+	 */
+	public static final String DB_TABLE = "BarCoverage";
+	
+	public static final String DB_COMPCOL_ID = "id";
+	@EmbeddedId
+	private BarCoverageId id;
+	
+	public static final String DB_COL_STOP = "stop";
+	/**
+	 * End of the covered interval, exclusive.
+	 */
+	private LocalDateTime stop;
+	
+	public BarCoverage() {
+		id = new BarCoverageId();
+	}
+	
+	/**
+	 * @param security
+	 * @param width
+	 * @param start Interval start, inclusive.
+	 * @param stop Interval end, exclusive.
+	 */
+	public BarCoverage(Security security, String width, LocalDateTime start, LocalDateTime stop) {
+		id = new BarCoverageId(security, width, start);
+		this.stop = stop;
+	}
+	
+	public LocalDateTime getStart() {
+		return id.getStart();
+	}
+	
+	public LocalDateTime getStop() {
+		return stop;
+	}
+	
+	@Override
+	public String toString() {
+		return "BarCoverage(id=" + id + ", stop=" + stop + ")";
+	}
+}
@@ -0,0 +1,69 @@
+package ogallagher.marketsense.persistent;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+import javax.persistence.*;
+
+import ogallagher.twelvedata_client_java.TwelvedataInterface.BarInterval;
+
+/**
+ * Composite key for {@link BarCoverage}.
+ * 
+ * @since 2026-10-18
+ */
+@Embeddable
+public class BarCoverageId implements Serializable {
+	private static final long serialVersionUID = 2861520473190625517L;
+	
+	public static final String DB_COL_SECURITY = "security";
+	public static final String DB_COL_SEC_SYMBOL = "securitySymbol";
+	public static final String DB_COL_SEC_EXCHANGE = "securityExchange";
+	@ManyToOne
+	@JoinColumns(value = { 
+		@JoinColumn(name=DB_COL_SEC_SYMBOL, referencedColumnName=SecurityId.DB_COL_SYMBOL),
+		@JoinColumn(name=DB_COL_SEC_EXCHANGE, referencedColumnName=SecurityId.DB_COL_EXCHANGE)
+	})
+	private Security security;
+	
+	public static final String DB_COL_WIDTH = "width";
+	/**
+	 * Bar width string. See {@link BarInterval} for valid options.
+	 */
+	private String width;
+	
+	public static final String DB_COL_START = "start";
+	/**
+	 * Start of the covered interval, inclusive.
+	 */
+	private LocalDateTime start;
+	
+	public BarCoverageId() {
+		this(new Security(), BarInterval.DY_1, LocalDateTime.MIN);
+	}
+	
+	public BarCoverageId(Security security, String width, LocalDateTime start) {
+		this.security = security;
+		this.width = width;
+		this.start = start;
+	}
+	
+	public LocalDateTime getStart() {
+		return start;
+	}
+	
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		return security.getId().toString() + "-" + width + "-" + start.toString();
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof BarCoverageId && hashCode() == other.hashCode();
+	}
+}
@@ -0,0 +1,55 @@
+package ogallagher.marketsense.persistent;
+
+import java.util.List;
+
+import ogallagher.marketsense.util.IntervalSet;
+
+/**
+ * <p>Storage of historical trade bars, read and written a whole series at a time per security and bar width.</p>
+ * 
+ * <p>Market samples and training sessions use this instead of querying {@link TradeBar} entities, so the bars
+ * can live either in the database ({@link DbBarRepository}) or in binary files ({@link FileBarRepository}).
+ * Alongside the bars, each repository keeps the intervals already fetched, so they are not fetched again.</p>
+ * 
+ * @since 2026-10-18
+ */
+public interface BarRepository {
+	/**
+	 * @param security
+	 * @param barWidth
+	 * 
+	 * @return Every stored bar of the given security and width, which is empty if there are none. The series does
+	 * not include bars added after it was returned.
+	 */
+	BarSeries getSeries(Security security, String barWidth);
+	
+	/**
+	 * Store new bars of the given security and width, replacing any stored at the same datetimes.
+	 * 
+	 * @param security
+	 * @param barWidth
+	 * @param bars New bars, in any order.
+	 */
+	void addBars(Security security, String barWidth, List<TradeBar> bars);
+	
+	/**
+	 * @param security
+	 * @param barWidth
+	 * 
+	 * @return Intervals of epoch seconds already fetched from the market data source, which bars are not fetched
+	 * again for. Empty if none were recorded.
+	 * 
+	 * @see BarSeries#toEpoch(java.time.LocalDateTime)
+	 */
+	IntervalSet getCoverage(Security security, String barWidth);
+	
+	/**
+	 * Record an interval as fetched, once its bars are stored.
+	 * 
+	 * @param security
+	 * @param barWidth
+	 * @param start Epoch seconds of the interval start, inclusive.
+	 * @param end Epoch seconds of the interval end, exclusive.
+	 */
+	void addCoverage(Security security, String barWidth, long start, long end);
+}
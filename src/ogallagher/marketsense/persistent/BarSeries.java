@@ -0,0 +1,342 @@
+package ogallagher.marketsense.persistent;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import ogallagher.marketsense.util.RangeMaxTable;
+
+/**
+ * <p>All trade bars of one security and bar width, stored by column in primitive arrays in chronological order.</p>
+ * 
+ * <p>Bar datetimes are kept as epoch seconds with a UTC offset, which is only used for ordering and lookup, so
+ * that a window of bars is found by binary search instead of a database query. A series is not updated in place;
+ * load a new one when bars are added.</p>
+ * 
+ * @see BarSeriesCache
+ * 
+ * @since 2026-10-18
+ */
+public class BarSeries {
+	private Security security;
+	/**
+	 * @see TradeBarId#DB_COL_WIDTH
+	 */
+	private String barWidth;
+	
+	private long[] epochs;
+	private float[] open;
+	private float[] high;
+	private float[] low;
+	private float[] close;
+	
+	/**
+	 * Range max index of {@code |close[i+1] - close[i]|}, built on first use.
+	 */
+	private volatile RangeMaxTable closeDeltas = null;
+	
+	private static final String DATETIME_COL = TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_DATETIME;
+	
+	/**
+	 * Load every bar of the given security and width from the database. Only the bar columns are selected, so no
+	 * {@link TradeBar} entities are created or managed.
+	 * 
+	 * @param dbManager
+	 * @param security
+	 * @param barWidth
+	 * 
+	 * @return Loaded series, which is empty if there are no bars.
+	 */
+	public static BarSeries load(EntityManager dbManager, Security security, String barWidth) {
+		Query query = createQuery(dbManager, security, barWidth, "all", "", "asc");
+		
+		return fromRows(security, barWidth, getRows(query), false);
+	}
+	
+	/**
+	 * Load a window of bars of the given security and width from the database, selecting only the bar columns like
+	 * {@link #load(EntityManager, Security, String)}.
+	 * 
+	 * @param dbManager
+	 * @param security
+	 * @param barWidth
+	 * @param start First bar datetime, or {@code null} to instead load the last {@code barCount} bars until 
+	 * {@code end}.
+	 * @param end Last bar datetime, inclusive.
+	 * @param barCount Maximum number of bars if {@code start} is {@code null}.
+	 * 
+	 * @return Loaded series, which is empty if there are no bars in the window.
+	 */
+	public static BarSeries loadWindow(
+			EntityManager dbManager, Security security, String barWidth, 
+			LocalDateTime start, LocalDateTime end, int barCount
+		) {
+		Query query;
+		
+		// descending in order to limit to the last bars
+		if (start == null) {
+			query = createQuery(dbManager, security, barWidth, "last", "and t." + DATETIME_COL + " <= :end ", "desc");
+			query.setMaxResults(barCount);
+		}
+		else {
+			query = createQuery(
+				dbManager, security, barWidth, "range",
+				"and t." + DATETIME_COL + " >= :start and t." + DATETIME_COL + " <= :end ", "desc"
+			);
+			query.setParameter("start", start);
+		}
+		query.setParameter("end", end);
+		
+		return fromRows(security, barWidth, getRows(query), true);
+	}
+	
+	/**
+	 * Load the bars of the given security and width from {@code start} to {@code end}, followed by the next bars
+	 * after {@code end} however far away they are, selecting only the bar columns like
+	 * {@link #load(EntityManager, Security, String)}.
+	 * 
+	 * @param dbManager
+	 * @param security
+	 * @param barWidth
+	 * @param start First bar datetime, inclusive.
+	 * @param end Last bar datetime of the range, inclusive.
+	 * @param nextCount Maximum number of bars to load after {@code end}.
+	 * 
+	 * @return Loaded series, which is empty if there are no bars.
+	 */
+	public static BarSeries loadRange(
+			EntityManager dbManager, Security security, String barWidth, 
+			LocalDateTime start, LocalDateTime end, int nextCount
+		) {
+		Query query = createQuery(
+			dbManager, security, barWidth, "rangeAsc",
+			"and t." + DATETIME_COL + " >= :start and t." + DATETIME_COL + " <= :end ", "asc"
+		);
+		query.setParameter("start", start);
+		query.setParameter("end", end);
+		List<Object[]> rows = new ArrayList<>(getRows(query));
+		
+		query = createQuery(dbManager, security, barWidth, "next", "and t." + DATETIME_COL + " > :end ", "asc");
+		query.setParameter("end", end);
+		query.setMaxResults(nextCount);
+		rows.addAll(getRows(query));
+		
+		return fromRows(security, barWidth, rows, false);
+	}
+	
+	/**
+	 * @param dbManager
+	 * @param security
+	 * @param barWidth
+	 * @param name Template name, which must be unique per filter and order.
+	 * @param filter Additional conditions on the trade bar {@code t}.
+	 * @param order Datetime order, {@code asc} or {@code desc}.
+	 * 
+	 * @return Query selecting the datetime, open, high, low, and close of the matching trade bars.
+	 */
+	private static Query createQuery(
+			EntityManager dbManager, Security security, String barWidth, 
+			String name, String filter, String order
+		) {
+		Query query = QueryTemplates.createQuery(dbManager, "BarSeries." + name, () -> 
+			String.format(
+				"select t.%5$s, t.%6$s, t.%7$s, t.%8$s, t.%9$s from %1$s t " +
+				"where t.%2$s = :securitySymbol and t.%3$s = :securityExchange and t.%4$s = :barWidth " +
+				"%10$s" +
+				"order by t.%5$s %11$s",
+				TradeBar.DB_TABLE,
+				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_SYMBOL,
+				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_EXCHANGE,
+				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_WIDTH,
+				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_DATETIME,
+				TradeBar.DB_COL_OPEN,
+				TradeBar.DB_COL_HIGH,
+				TradeBar.DB_COL_LOW,
+				TradeBar.DB_COL_CLOSE,
+				filter,
+				order
+			)
+		);
+		query.setParameter("securitySymbol", security.getSymbol());
+		query.setParameter("securityExchange", security.getExchange());
+		query.setParameter("barWidth", barWidth);
+		
+		return query;
+	}
+	
+	/**
+	 * @param query Query created by {@link #createQuery(EntityManager, Security, String, String, String, String) createQuery}.
+	 * 
+	 * @return Result rows of the query.
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<Object[]> getRows(Query query) {
+		return (List<Object[]>) query.getResultList();
+	}
+	
+	/**
+	 * @param security
+	 * @param barWidth
+	 * @param rows Result rows of a query created by {@link #createQuery(EntityManager, Security, String, String, String, String) createQuery}.
+	 * @param descending Whether the rows are in descending datetime order.
+	 * 
+	 * @return Series of the rows, in ascending order.
+	 */
+	private static BarSeries fromRows(Security security, String barWidth, List<Object[]> rows, boolean descending) {
+		int size = rows.size();
+		
+		BarSeries series = new BarSeries(security, barWidth, size);
+		int b = descending ? size-1 : 0;
+		for (Object[] row : rows) {
+			series.epochs[b] = toEpoch((LocalDateTime) row[0]);
+			series.open[b] = (Float) row[1];
+			series.high[b] = (Float) row[2];
+			series.low[b] = (Float) row[3];
+			series.close[b] = (Float) row[4];
+			b += descending ? -1 : 1;
+		}
+		
+		return series;
+	}
+	
+	public static long toEpoch(LocalDateTime datetime) {
+		return datetime.toEpochSecond(ZoneOffset.UTC);
+	}
+	
+	public static LocalDateTime toDatetime(long epoch) {
+		return LocalDateTime.ofEpochSecond(epoch, 0, ZoneOffset.UTC);
+	}
+	
+	private BarSeries(Security security, String barWidth, int size) {
+		this(security, barWidth, new long[size], new float[size], new float[size], new float[size], new float[size]);
+	}
+	
+	/**
+	 * @param security
+	 * @param barWidth
+	 * @param epochs Bar epoch seconds, ascending and distinct.
+	 * @param open
+	 * @param high
+	 * @param low
+	 * @param close
+	 */
+	BarSeries(Security security, String barWidth, long[] epochs, float[] open, float[] high, float[] low, float[] close) {
+		this.security = security;
+		this.barWidth = barWidth;
+		
+		this.epochs = epochs;
+		this.open = open;
+		this.high = high;
+		this.low = low;
+		this.close = close;
+	}
+	
+	/**
+	 * @param datetime
+	 * 
+	 * @return Index of the last bar at or before {@code datetime}, or {@code -1} if all bars are after it.
+	 */
+	public int floor(LocalDateTime datetime) {
+		int i = Arrays.binarySearch(epochs, toEpoch(datetime));
+		return i >= 0 ? i : -i - 2;
+	}
+	
+	/**
+	 * @param datetime
+	 * 
+	 * @return Index of the first bar at or after {@code datetime}, or {@link #size()} if all bars are before it.
+	 */
+	public int ceiling(LocalDateTime datetime) {
+		int i = Arrays.binarySearch(epochs, toEpoch(datetime));
+		return i >= 0 ? i : -i - 1;
+	}
+	
+	/**
+	 * @param from First bar index, inclusive.
+	 * @param to Last bar index, exclusive.
+	 * 
+	 * @return New array of the closes in the given range.
+	 */
+	public float[] getCloses(int from, int to) {
+		return Arrays.copyOfRange(close, from, to);
+	}
+	
+	/**
+	 * @param from First bar index, inclusive.
+	 * @param to Last bar index, exclusive.
+	 * 
+	 * @return Maximum absolute difference between consecutive closes in the given range, or {@code 0} if it has
+	 * less than 2 bars.
+	 */
+	public float getMaxCloseDelta(int from, int to) {
+		RangeMaxTable index = closeDeltas;
+		
+		if (index == null) {
+			float[] deltas = new float[Math.max(0, close.length-1)];
+			for (int i=0; i<deltas.length; i++) {
+				deltas[i] = Math.abs(close[i+1] - close[i]);
+			}
+			
+			// concurrent builds are equal, so either can win
+			index = new RangeMaxTable(deltas);
+			closeDeltas = index;
+		}
+		
+		return index.max(from, to-1);
+	}
+	
+	/**
+	 * @param index
+	 * 
+	 * @return A new, unmanaged trade bar entity for the bar at {@code index}.
+	 */
+	public TradeBar getTradeBar(int index) {
+		return new TradeBar(security, getDatetime(index), barWidth, open[index], high[index], low[index], close[index]);
+	}
+	
+	public int size() {
+		return epochs.length;
+	}
+	
+	public long getEpoch(int index) {
+		return epochs[index];
+	}
+	
+	public LocalDateTime getDatetime(int index) {
+		return toDatetime(epochs[index]);
+	}
+	
+	public float getOpen(int index) {
+		return open[index];
+	}
+	
+	public float getHigh(int index) {
+		return high[index];
+	}
+	
+	public float getLow(int index) {
+		return low[index];
+	}
+	
+	public float getClose(int index) {
+		return close[index];
+	}
+	
+	public Security getSecurity() {
+		return security;
+	}
+	
+	public String getBarWidth() {
+		return barWidth;
+	}
+	
+	@Override
+	public String toString() {
+		return "BarSeries(security=" + security + ", barWidth=" + barWidth + ", size=" + size() + ")";
+	}
+}
@@ -0,0 +1,99 @@
+package ogallagher.marketsense.persistent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+
+import ogallagher.temp_fx_logger.System;
+
+/**
+ * <p>Shared {@link BarSeries} per security and bar width, so that every sample of every session cut from the same
+ * market universe is read from memory after the first.</p>
+ * 
+ * <p>Whatever persists new trade bars must call {@link #invalidate(Security, String)} once they are committed,
+ * so the next lookup reloads the series.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class BarSeriesCache {
+	private static final ConcurrentHashMap<String, BarSeries> series = new ConcurrentHashMap<>();
+	/**
+	 * Incremented on every invalidation, so a series loaded while bars were being persisted is not cached.
+	 */
+	private static final AtomicLong invalidations = new AtomicLong(0);
+	
+	private static final AtomicLong hits = new AtomicLong(0);
+	private static final AtomicLong misses = new AtomicLong(0);
+	
+	/**
+	 * Whether samples are cut from cached series, or each queries the database.
+	 */
+	private static boolean enabled = true;
+	
+	private static String key(Security security, String barWidth) {
+		return security.getSymbol() + '_' + security.getExchange() + '_' + barWidth;
+	}
+	
+	/**
+	 * @param dbManager Used to load the series if not cached.
+	 * @param security
+	 * @param barWidth
+	 * 
+	 * @return The cached series, or a newly loaded one.
+	 */
+	public static BarSeries get(EntityManager dbManager, Security security, String barWidth) {
+		String key = key(security, barWidth);
+		BarSeries cached = series.get(key);
+		
+		if (cached != null) {
+			hits.incrementAndGet();
+			return cached;
+		}
+		else {
+			misses.incrementAndGet();
+			
+			long version = invalidations.get();
+			BarSeries loaded = BarSeries.load(dbManager, security, barWidth);
+			System.out.println("DEBUG loaded " + loaded);
+			
+			if (invalidations.get() == version) {
+				series.put(key, loaded);
+			}
+			
+			return loaded;
+		}
+	}
+	
+	/**
+	 * Drop the cached series of the given security and width, after new bars are persisted.
+	 * 
+	 * @param security
+	 * @param barWidth
+	 */
+	public static void invalidate(Security security, String barWidth) {
+		invalidations.incrementAndGet();
+		series.remove(key(security, barWidth));
+	}
+	
+	public static void clear() {
+		invalidations.incrementAndGet();
+		series.clear();
+	}
+	
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	
+	public static void setEnabled(boolean enabled) {
+		BarSeriesCache.enabled = enabled;
+	}
+	
+	public static long getHits() {
+		return hits.get();
+	}
+	
+	public static long getMisses() {
+		return misses.get();
+	}
+}
@@ -0,0 +1,84 @@
+package ogallagher.marketsense.persistent;
+
+import java.io.File;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+/**
+ * Copies every series in the {@link TradeBar} database table, with its {@link BarCoverage coverage}, to a
+ * {@link FileBarRepository}. Running it again replaces the copied files, so it can be repeated after more bars are
+ * collected into the database.
+ * 
+ * <p>Usage: {@code BarStoreMigration <storeDir> [persistenceUnit]}</p>
+ * 
+ * @since 2026-10-18
+ */
+public class BarStoreMigration {
+	public static final String PERSIST_UNIT_DEFAULT = "marketsensepersistence";
+	
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("usage: BarStoreMigration <storeDir> [persistenceUnit]");
+			return;
+		}
+		
+		EntityManagerFactory dbFactory = Persistence.createEntityManagerFactory(
+			args.length > 1 ? args[1] : PERSIST_UNIT_DEFAULT
+		);
+		EntityManager dbManager = dbFactory.createEntityManager();
+		
+		migrate(dbManager, new FileBarRepository(new File(args[0])));
+		
+		dbManager.close();
+		dbFactory.close();
+	}
+	
+	/**
+	 * @param dbManager Source database.
+	 * @param store Destination bar store.
+	 * 
+	 * @return Number of bars copied.
+	 */
+	@SuppressWarnings("unchecked")
+	public static long migrate(EntityManager dbManager, FileBarRepository store) {
+		List<Object[]> keys = (List<Object[]>) QueryTemplates.createQuery(dbManager, "BarStoreMigration.seriesKeys", () -> 
+			String.format(
+				"select distinct t.%2$s, t.%3$s, t.%4$s from %1$s t",
+				TradeBar.DB_TABLE,
+				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_SYMBOL,
+				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_EXCHANGE,
+				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_WIDTH
+			)
+		).getResultList();
+		System.out.println("INFO migrating " + keys.size() + " bar series to " + store.getDir().getPath());
+		
+		DbBarRepository source = new DbBarRepository(dbManager);
+		long start = System.nanoTime();
+		long count = 0;
+		for (Object[] key : keys) {
+			Security security = dbManager.find(Security.class, new SecurityId((String) key[0], (String) key[1]));
+			if (security == null) {
+				security = new Security((String) key[0], (String) key[1], SecurityType.STOCK);
+			}
+			
+			BarSeries series = BarSeries.load(dbManager, security, (String) key[2]);
+			store.putSeries(series);
+			count += series.size();
+			
+			for (long[] interval : source.getCoverage(security, (String) key[2]).getIntervals()) {
+				store.addCoverage(security, (String) key[2], interval[0], interval[1]);
+			}
+		}
+		
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(
+			"INFO migrated " + count + " bars in " + String.format("%.2f", seconds) + " s (" +
+			Math.round(count / Math.max(seconds, 1e-3)) + " bars/s)"
+		);
+		
+		return count;
+	}
+}
@@ -0,0 +1,140 @@
+package ogallagher.marketsense.persistent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import ogallagher.temp_fx_logger.System;
+
+/**
+ * <p>Access to the database from any thread, through one shared entity manager factory.</p>
+ * 
+ * <p>An entity manager and its persistence context are not thread safe, so each unit of work (ex. a query, or a
+ * transaction) is given its own short lived entity manager, which is closed when the work returns. Entities returned
+ * by a unit of work are then detached, so any lazy data they need must be loaded within it.</p>
+ * 
+ * <p>Work that should not block the calling thread (ex. the javafx thread) is submitted to a bounded pool of
+ * database workers, which also bounds the number of connections opened for background work.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class DbAccess {
+	public static final int WORKERS_DEFAULT = 2;
+	
+	/**
+	 * Unit of work, given an entity manager that is closed after it returns.
+	 * 
+	 * @param <T> Result type.
+	 */
+	public static interface Work<T> {
+		public T run(EntityManager dbManager);
+	}
+	
+	private EntityManagerFactory dbFactory;
+	private ExecutorService workers;
+	
+	public DbAccess(EntityManagerFactory dbFactory) {
+		this(dbFactory, WORKERS_DEFAULT);
+	}
+	
+	/**
+	 * @param dbFactory
+	 * @param workerCount Number of submitted units of work run at once.
+	 */
+	public DbAccess(EntityManagerFactory dbFactory, int workerCount) {
+		this.dbFactory = dbFactory;
+		
+		workers = Executors.newFixedThreadPool(workerCount, (runnable) -> {
+			Thread worker = new Thread(runnable, "db-worker");
+			// do not keep the program open
+			worker.setDaemon(true);
+			return worker;
+		});
+	}
+	
+	/**
+	 * Run a unit of work on the calling thread, with a new entity manager. The work manages its own transactions,
+	 * and one it leaves open is rolled back.
+	 * 
+	 * @param work
+	 * 
+	 * @return Result of the work.
+	 */
+	public <T> T call(Work<T> work) {
+		EntityManager dbManager = dbFactory.createEntityManager();
+		
+		try {
+			return work.run(dbManager);
+		}
+		finally {
+			if (dbManager.getTransaction().isActive()) {
+				System.out.println("WARNING rolling back transaction left open by unit of work");
+				dbManager.getTransaction().rollback();
+			}
+			dbManager.close();
+		}
+	}
+	
+	/**
+	 * Run a unit of work on the calling thread, with a new entity manager, within one transaction. The transaction
+	 * is committed if the work returns, or else rolled back.
+	 * 
+	 * @param work
+	 * 
+	 * @return Result of the work.
+	 */
+	public <T> T transact(Work<T> work) {
+		return call((dbManager) -> {
+			dbManager.getTransaction().begin();
+			T result = work.run(dbManager);
+			dbManager.getTransaction().commit();
+			return result;
+		});
+	}
+	
+	/**
+	 * Run a unit of work like {@link #call(Work)} on a database worker.
+	 * 
+	 * @param work
+	 * 
+	 * @return Future result of the work, which completes on the worker.
+	 */
+	public <T> CompletableFuture<T> submit(Work<T> work) {
+		return CompletableFuture.supplyAsync(() -> call(work), workers);
+	}
+	
+	/**
+	 * Run a unit of work like {@link #transact(Work)} on a database worker.
+	 * 
+	 * @param work
+	 * 
+	 * @return Future result of the work, which completes on the worker.
+	 */
+	public <T> CompletableFuture<T> submitTransaction(Work<T> work) {
+		return CompletableFuture.supplyAsync(() -> transact(work), workers);
+	}
+	
+	public EntityManagerFactory getFactory() {
+		return dbFactory;
+	}
+	
+	/**
+	 * Stop accepting submitted work and wait for queued work to finish. The entity manager factory stays open, for
+	 * its owner to close.
+	 * 
+	 * @param timeout
+	 * @param unit
+	 * 
+	 * @return Whether queued work finished before the timeout.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+		workers.shutdown();
+		return workers.awaitTermination(timeout, unit);
+	}
+}
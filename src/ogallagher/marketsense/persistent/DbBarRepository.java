@@ -0,0 +1,165 @@
+package ogallagher.marketsense.persistent;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.EntityManager;
+
+import ogallagher.marketsense.util.IntervalSet;
+
+/**
+ * Bar repository backed by the {@link TradeBar} database table, whose series are shared through the
+ * {@link BarSeriesCache}, and the {@link BarCoverage} table. New bars are written in bulk by a
+ * {@link TradeBarLoader}.
+ * 
+ * <p>Given {@link DbAccess}, each operation is a unit of work with its own entity manager, so the repository can be
+ * shared between threads without locking the entity manager. Given a single entity manager instead, each operation
+ * holds its lock, so the repository can be shared between threads that lock it likewise.</p>
+ * 
+ * <p>Either way, writes of bars and coverage hold the lock of their series, shared by every repository, so that two
+ * writers of the same series (ex. a training session and background collection) do not insert the same rows.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class DbBarRepository implements BarRepository {
+	/**
+	 * Lock of each series, shared by every repository, since concurrent writes of the same series would conflict.
+	 */
+	private static final ConcurrentHashMap<String, Object> seriesLocks = new ConcurrentHashMap<>();
+	
+	private DbAccess dbAccess;
+	private EntityManager dbManager;
+	private TradeBarLoader loader = new TradeBarLoader();
+	
+	/**
+	 * @param dbAccess Source of an entity manager per operation.
+	 */
+	public DbBarRepository(DbAccess dbAccess) {
+		this.dbAccess = dbAccess;
+	}
+	
+	/**
+	 * @param dbManager Entity manager of every operation.
+	 */
+	public DbBarRepository(EntityManager dbManager) {
+		this.dbManager = dbManager;
+	}
+	
+	private <T> T run(DbAccess.Work<T> work) {
+		if (dbAccess != null) {
+			return dbAccess.call(work);
+		}
+		else {
+			synchronized (dbManager) {
+				return work.run(dbManager);
+			}
+		}
+	}
+	
+	@Override
+	public BarSeries getSeries(Security security, String barWidth) {
+		return run((dbManager) -> BarSeriesCache.get(dbManager, security, barWidth));
+	}
+	
+	/**
+	 * Loads while holding the lock of the series, so the stored bars read by the loader are not changed by another
+	 * load before it writes.
+	 */
+	@Override
+	public void addBars(Security security, String barWidth, List<TradeBar> bars) {
+		synchronized (getSeriesLock(security, barWidth)) {
+			run((dbManager) -> {
+				loader.load(dbManager, security, barWidth, bars);
+				
+				// cached series no longer has every bar
+				BarSeriesCache.invalidate(security, barWidth);
+				return null;
+			});
+		}
+	}
+	
+	@Override
+	public IntervalSet getCoverage(Security security, String barWidth) {
+		return run((dbManager) -> {
+			IntervalSet coverage = new IntervalSet();
+			for (BarCoverage interval : loadCoverage(dbManager, security, barWidth)) {
+				coverage.add(BarSeries.toEpoch(interval.getStart()), BarSeries.toEpoch(interval.getStop()));
+			}
+			return coverage;
+		});
+	}
+	
+	/**
+	 * Merges with the stored intervals while holding the lock of the series.
+	 */
+	@Override
+	public void addCoverage(Security security, String barWidth, long start, long end) {
+		synchronized (getSeriesLock(security, barWidth)) {
+			run((dbManager) -> {
+				List<BarCoverage> stored = loadCoverage(dbManager, security, barWidth);
+				IntervalSet coverage = new IntervalSet();
+				for (BarCoverage interval : stored) {
+					coverage.add(BarSeries.toEpoch(interval.getStart()), BarSeries.toEpoch(interval.getStop()));
+				}
+				coverage.add(start, end);
+				
+				// replace the stored intervals with the merged ones
+				dbManager.getTransaction().begin();
+				for (BarCoverage interval : stored) {
+					dbManager.remove(interval);
+				}
+				// deletes before inserts, since a merged interval can keep the start of a stored one
+				dbManager.flush();
+				for (long[] interval : coverage.getIntervals()) {
+					dbManager.persist(new BarCoverage(
+						security, barWidth, BarSeries.toDatetime(interval[0]), BarSeries.toDatetime(interval[1])
+					));
+				}
+				dbManager.getTransaction().commit();
+				return null;
+			});
+		}
+	}
+	
+	/**
+	 * @param security
+	 * @param barWidth
+	 * 
+	 * @return Lock of the given series, the same for every repository.
+	 */
+	private static Object getSeriesLock(Security security, String barWidth) {
+		return seriesLocks.computeIfAbsent(
+			security.getSymbol() + '_' + security.getExchange() + '_' + barWidth, 
+			(key) -> new Object()
+		);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static List<BarCoverage> loadCoverage(EntityManager dbManager, Security security, String barWidth) {
+		return (List<BarCoverage>) QueryTemplates.createQuery(dbManager, "BarCoverage.series", () -> 
+			String.format(
+				"select c from %1$s c " +
+				"where c.%2$s = :securitySymbol and c.%3$s = :securityExchange and c.%4$s = :barWidth",
+				BarCoverage.DB_TABLE,
+				BarCoverage.DB_COMPCOL_ID + "." + BarCoverageId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_SYMBOL,
+				BarCoverage.DB_COMPCOL_ID + "." + BarCoverageId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_EXCHANGE,
+				BarCoverage.DB_COMPCOL_ID + "." + BarCoverageId.DB_COL_WIDTH
+			)
+		)
+		.setParameter("securitySymbol", security.getSymbol())
+		.setParameter("securityExchange", security.getExchange())
+		.setParameter("barWidth", barWidth)
+		.getResultList();
+	}
+	
+	public TradeBarLoader getLoader() {
+		return loader;
+	}
+	
+	/**
+	 * @return The entity manager of every operation, or {@code null} if each has its own.
+	 */
+	public EntityManager getDbManager() {
+		return dbManager;
+	}
+}
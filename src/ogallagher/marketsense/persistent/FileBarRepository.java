@@ -0,0 +1,379 @@
+package ogallagher.marketsense.persistent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ogallagher.marketsense.util.IntervalSet;
+import ogallagher.temp_fx_logger.System;
+
+/**
+ * <p>Bar repository of binary files, one per security and bar width, at {@code <dir>/<barWidth>/<symbol>_<exchange>.bars}.</p>
+ * 
+ * <p>A file is a {@link #HEADER_BYTES header} followed by fixed-width records of {@link #RECORD_BYTES} in ascending
+ * datetime order: epoch seconds as a {@code long}, then open, high, low, close as {@code float}. Series are read
+ * whole into a heap buffer, and bars after the last stored are appended. Bars that would land before the end are
+ * merged into a rewritten copy of the file, which then replaces the original.</p>
+ * 
+ * <p>Files are not memory mapped, since a mapping stays open until garbage collected, and on Windows a file cannot
+ * be replaced while it is mapped.</p>
+ * 
+ * <p>The intervals already fetched are kept beside each bar file in {@code <symbol>_<exchange>.cov}, being the
+ * header followed by the start and end epoch seconds of each interval as {@code long}.</p>
+ * 
+ * @see BarStoreMigration
+ * 
+ * @since 2026-10-18
+ */
+public class FileBarRepository implements BarRepository {
+	/**
+	 * File signature, {@code "MSBR"}.
+	 */
+	private static final int MAGIC = 0x4D534252;
+	private static final int VERSION = 1;
+	/**
+	 * Magic number and version.
+	 */
+	public static final int HEADER_BYTES = 8;
+	/**
+	 * Epoch seconds, open, high, low, close.
+	 */
+	public static final int RECORD_BYTES = Long.BYTES + 4 * Float.BYTES;
+	
+	private static final String FILE_EXT = ".bars";
+	
+	/**
+	 * Coverage file signature, {@code "MSBC"}.
+	 */
+	private static final int COVERAGE_MAGIC = 0x4D534243;
+	/**
+	 * Interval start and end epoch seconds.
+	 */
+	private static final int COVERAGE_RECORD_BYTES = 2 * Long.BYTES;
+	private static final String COVERAGE_FILE_EXT = ".cov";
+	
+	private File dir;
+	
+	/**
+	 * Series already read, dropped when their file is written.
+	 */
+	private ConcurrentHashMap<File, BarSeries> series = new ConcurrentHashMap<>();
+	
+	/**
+	 * @param dir Store root directory, which is created if missing.
+	 */
+	public FileBarRepository(File dir) {
+		this.dir = dir;
+		
+		if (dir.mkdirs()) {
+			System.out.println("INFO created bar store dir at " + dir.getPath());
+		}
+	}
+	
+	private File getFile(Security security, String barWidth) {
+		return getFile(security, barWidth, FILE_EXT);
+	}
+	
+	private File getFile(Security security, String barWidth, String fileExt) {
+		return new File(new File(dir, barWidth), security.getSymbol() + '_' + security.getExchange() + fileExt);
+	}
+	
+	@Override
+	public BarSeries getSeries(Security security, String barWidth) {
+		// a write removes the series only after a concurrent read has put it
+		return series.computeIfAbsent(getFile(security, barWidth), (file) -> read(file, security, barWidth));
+	}
+	
+	/**
+	 * Read every record of a bar file into a new series.
+	 * 
+	 * @param file
+	 * @param security
+	 * @param barWidth
+	 * 
+	 * @return Read series, which is empty if the file does not exist, is empty, or could not be read.
+	 */
+	private static BarSeries read(File file, Security security, String barWidth) {
+		long[] epochs = new long[0];
+		float[] open = new float[0], high = open, low = open, close = open;
+		
+		if (file.length() >= HEADER_BYTES) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				int size = (int) ((channel.size() - HEADER_BYTES) / RECORD_BYTES);
+				ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + size * RECORD_BYTES);
+				// one read, unless the channel returns less
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer) == -1) {
+						throw new IOException("bar file ended early");
+					}
+				}
+				buffer.flip();
+				
+				if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+					throw new IOException("not a version " + VERSION + " bar file");
+				}
+				
+				epochs = new long[size];
+				open = new float[size];
+				high = new float[size];
+				low = new float[size];
+				close = new float[size];
+				
+				buffer.position(HEADER_BYTES);
+				for (int b=0; b<size; b++) {
+					epochs[b] = buffer.getLong();
+					open[b] = buffer.getFloat();
+					high[b] = buffer.getFloat();
+					low[b] = buffer.getFloat();
+					close[b] = buffer.getFloat();
+				}
+			}
+			catch (IOException e) {
+				System.out.println("ERROR failed to read bar file " + file.getPath() + ": " + e.getMessage());
+				epochs = new long[0];
+				open = high = low = close = new float[0];
+			}
+		}
+		
+		return new BarSeries(security, barWidth, epochs, open, high, low, close);
+	}
+	
+	@Override
+	public synchronized void addBars(Security security, String barWidth, List<TradeBar> bars) {
+		if (bars.isEmpty()) {
+			return;
+		}
+		
+		List<TradeBar> sorted = new ArrayList<>(bars);
+		sorted.sort(Comparator.naturalOrder());
+		
+		File file = getFile(security, barWidth);
+		BarSeries stored = getSeries(security, barWidth);
+		
+		try {
+			long firstNew = BarSeries.toEpoch(sorted.get(0).getDatetime());
+			
+			if (stored.size() == 0 || firstNew > stored.getEpoch(stored.size()-1)) {
+				append(file, sorted);
+			}
+			else {
+				write(file, merge(stored, sorted));
+			}
+			
+			System.out.println("DEBUG stored " + bars.size() + " bars in " + file.getPath());
+		}
+		catch (IOException e) {
+			System.out.println("ERROR failed to store bars in " + file.getPath() + ": " + e.getMessage());
+		}
+		finally {
+			series.remove(file);
+		}
+	}
+	
+	/**
+	 * Replace the stored bars of a series' security and width with the series. Used for migration.
+	 * 
+	 * @param bars
+	 */
+	public synchronized void putSeries(BarSeries bars) {
+		File file = getFile(bars.getSecurity(), bars.getBarWidth());
+		
+		try {
+			write(file, bars);
+		}
+		catch (IOException e) {
+			System.out.println("ERROR failed to store bars in " + file.getPath() + ": " + e.getMessage());
+		}
+		finally {
+			series.remove(file);
+		}
+	}
+	
+	@Override
+	public synchronized IntervalSet getCoverage(Security security, String barWidth) {
+		File file = getFile(security, barWidth, COVERAGE_FILE_EXT);
+		IntervalSet coverage = new IntervalSet();
+		
+		if (file.length() >= HEADER_BYTES) {
+			try {
+				ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+				
+				if (buffer.getInt() != COVERAGE_MAGIC || buffer.getInt() != VERSION) {
+					throw new IOException("not a version " + VERSION + " coverage file");
+				}
+				
+				while (buffer.remaining() >= COVERAGE_RECORD_BYTES) {
+					coverage.add(buffer.getLong(), buffer.getLong());
+				}
+			}
+			catch (IOException e) {
+				System.out.println("ERROR failed to read coverage file " + file.getPath() + ": " + e.getMessage());
+			}
+		}
+		
+		return coverage;
+	}
+	
+	@Override
+	public synchronized void addCoverage(Security security, String barWidth, long start, long end) {
+		IntervalSet coverage = getCoverage(security, barWidth);
+		coverage.add(start, end);
+		
+		File file = getFile(security, barWidth, COVERAGE_FILE_EXT);
+		List<long[]> intervals = coverage.getIntervals();
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + intervals.size() * COVERAGE_RECORD_BYTES);
+		buffer.putInt(COVERAGE_MAGIC).putInt(VERSION);
+		for (long[] interval : intervals) {
+			buffer.putLong(interval[0]).putLong(interval[1]);
+		}
+		
+		try {
+			replace(file, buffer.array());
+		}
+		catch (IOException e) {
+			System.out.println("ERROR failed to store coverage in " + file.getPath() + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Append bars that are all after the last stored bar, creating the file if missing. Of new bars with the same
+	 * datetime, the last is kept.
+	 * 
+	 * @param file
+	 * @param bars Sorted bars.
+	 * 
+	 * @throws IOException
+	 */
+	private static void append(File file, List<TradeBar> bars) throws IOException {
+		file.getParentFile().mkdirs();
+		
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bars.size() * RECORD_BYTES);
+		boolean exists = file.exists() && file.length() >= HEADER_BYTES;
+		if (!exists) {
+			buffer.putInt(MAGIC).putInt(VERSION);
+		}
+		
+		long last = Long.MIN_VALUE;
+		for (TradeBar bar : bars) {
+			long epoch = BarSeries.toEpoch(bar.getDatetime());
+			if (epoch == last) {
+				// duplicate within new bars, the later replaces the earlier
+				buffer.position(buffer.position() - RECORD_BYTES);
+			}
+			buffer.putLong(epoch)
+			.putFloat(bar.getOpen()).putFloat(bar.getHigh()).putFloat(bar.getLow()).putFloat(bar.getClose());
+			last = epoch;
+		}
+		buffer.flip();
+		
+		try (FileChannel channel = FileChannel.open(
+				file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND
+			)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+	
+	/**
+	 * Write a whole series to a temporary file, then move it over the original.
+	 * 
+	 * @param file
+	 * @param bars
+	 * 
+	 * @throws IOException
+	 */
+	private static void write(File file, BarSeries bars) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bars.size() * RECORD_BYTES);
+		buffer.putInt(MAGIC).putInt(VERSION);
+		for (int b=0; b<bars.size(); b++) {
+			buffer.putLong(bars.getEpoch(b))
+			.putFloat(bars.getOpen(b)).putFloat(bars.getHigh(b)).putFloat(bars.getLow(b)).putFloat(bars.getClose(b));
+		}
+		
+		replace(file, buffer.array());
+	}
+	
+	/**
+	 * Write data to a temporary file, then move it over the original.
+	 * 
+	 * @param file
+	 * @param data
+	 * 
+	 * @throws IOException
+	 */
+	private static void replace(File file, byte[] data) throws IOException {
+		file.getParentFile().mkdirs();
+		File temp = new File(file.getPath() + ".tmp");
+		
+		Files.write(temp.toPath(), data);
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * Merge stored and new bars by datetime. A new bar replaces a stored bar of the same datetime.
+	 * 
+	 * @param stored
+	 * @param bars Sorted new bars.
+	 * 
+	 * @return Merged series.
+	 */
+	private static BarSeries merge(BarSeries stored, List<TradeBar> bars) {
+		int capacity = stored.size() + bars.size();
+		long[] epochs = new long[capacity];
+		float[] open = new float[capacity], high = new float[capacity], low = new float[capacity], close = new float[capacity];
+		
+		int s = 0, n = 0, m = 0;
+		while (s < stored.size() || n < bars.size()) {
+			long storedEpoch = s < stored.size() ? stored.getEpoch(s) : Long.MAX_VALUE;
+			long newEpoch = n < bars.size() ? BarSeries.toEpoch(bars.get(n).getDatetime()) : Long.MAX_VALUE;
+			
+			if (newEpoch <= storedEpoch) {
+				TradeBar bar = bars.get(n++);
+				if (newEpoch == storedEpoch) {
+					s++;
+				}
+				if (m > 0 && epochs[m-1] == newEpoch) {
+					// duplicate within new bars
+					m--;
+				}
+				epochs[m] = newEpoch;
+				open[m] = bar.getOpen();
+				high[m] = bar.getHigh();
+				low[m] = bar.getLow();
+				close[m] = bar.getClose();
+			}
+			else {
+				epochs[m] = storedEpoch;
+				open[m] = stored.getOpen(s);
+				high[m] = stored.getHigh(s);
+				low[m] = stored.getLow(s);
+				close[m] = stored.getClose(s);
+				s++;
+			}
+			m++;
+		}
+		
+		return new BarSeries(
+			stored.getSecurity(), stored.getBarWidth(),
+			Arrays.copyOf(epochs, m),
+			Arrays.copyOf(open, m),
+			Arrays.copyOf(high, m),
+			Arrays.copyOf(low, m),
+			Arrays.copyOf(close, m)
+		);
+	}
+	
+	public File getDir() {
+		return dir;
+	}
+}
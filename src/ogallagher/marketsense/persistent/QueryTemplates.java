@@ -0,0 +1,129 @@
+package ogallagher.marketsense.persistent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import ogallagher.temp_fx_logger.System;
+
+/**
+ * <p>Registry of JPQL query strings by name, each built once from the {@code DB_*} constants on first use.</p>
+ * 
+ * <p>Since every use of a template passes Hibernate the same string, its parsed query plan is found in the
+ * query plan cache instead of being compiled again. Queries with optional filters register one template per
+ * combination of filters, named by the combination.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class QueryTemplates {
+	private static final ConcurrentHashMap<String, String> templates = new ConcurrentHashMap<>();
+	
+	private static final AtomicLong hits = new AtomicLong(0);
+	private static final AtomicLong misses = new AtomicLong(0);
+	
+	/**
+	 * @param name Template name, unique across the program.
+	 * @param builder Builds the JPQL string if not yet registered.
+	 * 
+	 * @return The JPQL string of the named template.
+	 */
+	public static String get(String name, Supplier<String> builder) {
+		String jpql = templates.get(name);
+		
+		if (jpql != null) {
+			hits.incrementAndGet();
+		}
+		else {
+			misses.incrementAndGet();
+			jpql = templates.computeIfAbsent(name, (key) -> builder.get());
+			System.out.println("DEBUG registered query template " + name + ":\n" + jpql);
+		}
+		
+		return jpql;
+	}
+	
+	/**
+	 * @param dbManager
+	 * @param name Template name.
+	 * @param builder Builds the JPQL string if not yet registered.
+	 * 
+	 * @return New query of the named template, without parameters.
+	 */
+	public static Query createQuery(EntityManager dbManager, String name, Supplier<String> builder) {
+		return dbManager.createQuery(get(name, builder));
+	}
+	
+	/**
+	 * Whether Hibernate counts statistics, including query plan cache hits, for the database of the given
+	 * entity manager. Enabling them after the factory is built does not enable Hibernate's per session metrics log.
+	 * 
+	 * @param dbManager
+	 * @param enabled
+	 */
+	public static void setStatisticsEnabled(EntityManager dbManager, boolean enabled) {
+		setStatisticsEnabled(dbManager.getEntityManagerFactory(), enabled);
+	}
+	
+	public static void setStatisticsEnabled(EntityManagerFactory dbFactory, boolean enabled) {
+		getStatistics(dbFactory).setStatisticsEnabled(enabled);
+	}
+	
+	public static boolean isStatisticsEnabled(EntityManager dbManager) {
+		return getStatistics(dbManager.getEntityManagerFactory()).isStatisticsEnabled();
+	}
+	
+	private static Statistics getStatistics(EntityManagerFactory dbFactory) {
+		return dbFactory.unwrap(SessionFactory.class).getStatistics();
+	}
+	
+	/**
+	 * @param dbManager
+	 * 
+	 * @return Summary of template and query plan cache hits, for logging.
+	 */
+	public static String getSummary(EntityManager dbManager) {
+		return getSummary(dbManager.getEntityManagerFactory());
+	}
+	
+	public static String getSummary(EntityManagerFactory dbFactory) {
+		String summary = "query templates: " + summarize(hits.get(), misses.get());
+		
+		Statistics statistics = getStatistics(dbFactory);
+		if (statistics.isStatisticsEnabled()) {
+			summary += ", query plan cache: " + summarize(
+				statistics.getQueryPlanCacheHitCount(),
+				statistics.getQueryPlanCacheMissCount()
+			);
+		}
+		
+		return summary;
+	}
+	
+	private static String summarize(long hits, long misses) {
+		long total = hits + misses;
+		return hits + " hits " + misses + " misses (" +
+			(total == 0 ? "-" : String.format("%.1f%%", 100.0 * hits / total)) + ")";
+	}
+	
+	public static long getHits() {
+		return hits.get();
+	}
+	
+	public static long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * Number of registered templates.
+	 */
+	public static int size() {
+		return templates.size();
+	}
+}
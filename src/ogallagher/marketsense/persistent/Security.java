@@ -14,6 +14,10 @@ import ogallagher.twelvedata_client_java.TwelvedataInterface.SecuritySet;
 @Entity
 public class Security {
 	public static final String DB_TABLE = "Security";
+	/**
+	 * Number of candidates requested from a Twelvedata symbol lookup.
+	 */
+	public static final int SYMBOL_LOOKUP_RESULTS = 10;
 	
 	public static final String DB_COL_ID = "id";
 	@EmbeddedId
@@ -59,56 +63,87 @@ public class Security {
 	 * @return Loaded security, or <code>null</code> on failure.
 	 */
 	public static Security loadSecurity(String symbol, EntityManager dbManager, TwelvedataClient tdclient) {
-		Security security = null;
+		Security security = findSecurity(symbol, dbManager);
+		
+		if (security == null) {
+			// try to use twelvedata api lookup to determine security specs from symbol if not in db
+			security = fromSymbolLookup(symbol, tdclient.symbolLookup(symbol, SYMBOL_LOOKUP_RESULTS));
+			
+			if (security != null) {
+				// add security to db
+				dbManager.getTransaction().begin();
+				dbManager.persist(security);
+				dbManager.getTransaction().commit();
+			}
+		}
 		
-		// try to fetch security from db
+		return security;
+	}
+	
+	/**
+	 * @param symbol
+	 * @param dbManager
+	 * 
+	 * @return The security of the given symbol in the database, or <code>null</code> if not found.
+	 */
+	public static Security findSecurity(String symbol, EntityManager dbManager) {
 		try {
-			Security dbSecurity = (Security) dbManager.createQuery(
-				"select s from " + Security.DB_TABLE + " s " + 
+			return (Security) QueryTemplates.createQuery(
+				dbManager, 
+				"Security.bySymbol", 
+				() -> "select s from " + Security.DB_TABLE + " s " + 
 				"where s." + Security.DB_COL_ID + "." + SecurityId.DB_COL_SYMBOL + " = :symbol"
 			)
 			.setParameter("symbol", symbol)
 			.setMaxResults(1)
 			.getSingleResult();
-			
-			security = dbSecurity;
 		}
 		catch (NoResultException | NullPointerException e) {
-			// try to use twelvedata api lookup to determine security specs from symbol if not in db
-			SecuritySet securitySet = tdclient.symbolLookup(symbol, 10);
-			SecuritySet.Security tdSecurity = null;
+			return null;
+		}
+	}
+	
+	/**
+	 * @param symbol
+	 * @param securitySet Result of a Twelvedata symbol lookup, or <code>null</code> if the lookup failed.
+	 * 
+	 * @return New security of the given symbol from the lookup result, or <code>null</code> if none was found on a
+	 * supported exchange.
+	 */
+	public static Security fromSymbolLookup(String symbol, SecuritySet securitySet) {
+		if (securitySet == null || securitySet.data == null) {
+			System.out.println("ERROR symbol lookup of " + symbol + " failed");
+			return null;
+		}
+		
+		SecuritySet.Security tdSecurity = null;
+		
+		for (SecuritySet.Security candidate : securitySet.data) {
+			if (candidate.symbol.equals(symbol) && (candidate.exchange.equals("NYSE") || candidate.exchange.equals("NASDAQ"))) {
+				tdSecurity = candidate;
+				break;
+			}
+			else {
+				System.out.println("skip candidate " + candidate);
+			}
+		}
+		
+		if (tdSecurity != null) {
+			SecurityType securityType = SecurityType.STOCK;
+			switch (tdSecurity.instrument_type) {
+				case ogallagher.twelvedata_client_java.TwelvedataInterface.SecurityType.ETF:
+					securityType = SecurityType.ETF;
+					break;
 			
-			for (SecuritySet.Security candidate : securitySet.data) {
-				if (candidate.symbol.equals(symbol) && (candidate.exchange.equals("NYSE") || candidate.exchange.equals("NASDAQ"))) {
-					tdSecurity = candidate;
+				case ogallagher.twelvedata_client_java.TwelvedataInterface.SecurityType.COMMON_STOCK:
+					securityType = SecurityType.STOCK;
 					break;
-				}
-				else {
-					System.out.println("skip candidate " + candidate);
-				}
 			}
 			
-			if (tdSecurity != null) {
-				SecurityType securityType = SecurityType.STOCK;
-				switch (tdSecurity.instrument_type) {
-					case ogallagher.twelvedata_client_java.TwelvedataInterface.SecurityType.ETF:
-						securityType = SecurityType.ETF;
-						break;
-				
-					case ogallagher.twelvedata_client_java.TwelvedataInterface.SecurityType.COMMON_STOCK:
-						securityType = SecurityType.STOCK;
-						break;
-				}
-				
-				security = new Security(tdSecurity.symbol, tdSecurity.exchange, securityType);
-				
-				// add security to db
-				dbManager.getTransaction().begin();
-				dbManager.persist(security);
-				dbManager.getTransaction().commit();
-			}
+			return new Security(tdSecurity.symbol, tdSecurity.exchange, securityType);
+		}
+		else {
+			return null;
 		}
-		
-		return security;
 	}
 }
@@ -0,0 +1,227 @@
+package ogallagher.marketsense.persistent;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.hibernate.Session;
+
+import ogallagher.temp_fx_logger.System;
+
+/**
+ * <p>Bulk loader of new {@link TradeBar trade bars} into the database, for backfills too large to persist as
+ * entities.</p>
+ * 
+ * <p>Bars are written with batched JDBC statements on the connection of the given entity manager, without entering
+ * its persistence context. The datetimes already stored in the range of the load are read once, so that new bars are
+ * inserted and stored bars are updated, instead of failing the load. Each chunk of bars is written and committed
+ * in its own transaction, so memory use does not grow with the size of the load.</p>
+ * 
+ * <p>An upsert per bar ({@code MERGE}) is avoided, since H2 plans its key lookup while the series is still small,
+ * and then scans the whole series of the security for every bar.</p>
+ * 
+ * <p>A loader holds no entity manager, so one loader can be shared by threads loading with their own.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class TradeBarLoader {
+	public static final int CHUNK_SIZE_DEFAULT = 1000;
+	
+	private static final String INSERT_SQL = String.format(
+		"insert into %1$s (%6$s, %7$s, %8$s, %9$s, %2$s, %3$s, %4$s, %5$s) values (?, ?, ?, ?, ?, ?, ?, ?)",
+		TradeBar.DB_TABLE,
+		TradeBarId.DB_COL_SEC_SYMBOL,
+		TradeBarId.DB_COL_SEC_EXCHANGE,
+		TradeBarId.DB_COL_DATETIME,
+		TradeBarId.DB_COL_WIDTH,
+		TradeBar.DB_COL_OPEN,
+		TradeBar.DB_COL_HIGH,
+		TradeBar.DB_COL_LOW,
+		TradeBar.DB_COL_CLOSE
+	);
+	private static final String UPDATE_SQL = String.format(
+		"update %1$s set %6$s = ?, %7$s = ?, %8$s = ?, %9$s = ? where %2$s = ? and %3$s = ? and %4$s = ? and %5$s = ?",
+		TradeBar.DB_TABLE,
+		TradeBarId.DB_COL_SEC_SYMBOL,
+		TradeBarId.DB_COL_SEC_EXCHANGE,
+		TradeBarId.DB_COL_DATETIME,
+		TradeBarId.DB_COL_WIDTH,
+		TradeBar.DB_COL_OPEN,
+		TradeBar.DB_COL_HIGH,
+		TradeBar.DB_COL_LOW,
+		TradeBar.DB_COL_CLOSE
+	);
+	
+	private int chunkSize;
+	
+	private final AtomicLong totalRows = new AtomicLong(0);
+	private final AtomicLong totalNanos = new AtomicLong(0);
+	
+	public TradeBarLoader() {
+		this(CHUNK_SIZE_DEFAULT);
+	}
+	
+	/**
+	 * @param chunkSize Number of bars written and committed together.
+	 */
+	public TradeBarLoader(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+	
+	/**
+	 * Insert or replace bars of the given security and width. The security must already be stored.
+	 * 
+	 * <p>Entities of the same bars already in the persistence context are not updated, and cached series are not
+	 * invalidated.</p>
+	 * 
+	 * @param dbManager Entity manager without an active transaction.
+	 * @param security
+	 * @param barWidth
+	 * @param bars
+	 * 
+	 * @return Number of bars written.
+	 * 
+	 * @throws PersistenceException If a chunk failed, which is rolled back. Chunks before it stay committed.
+	 */
+	public int load(EntityManager dbManager, Security security, String barWidth, List<TradeBar> bars)
+		throws PersistenceException {
+		if (bars.isEmpty()) {
+			return 0;
+		}
+		
+		long start = java.lang.System.nanoTime();
+		Set<LocalDateTime> stored = loadDatetimes(dbManager, security, barWidth, bars);
+		int updated = 0;
+		Session session = dbManager.unwrap(Session.class);
+		
+		for (int from=0; from < bars.size(); from += chunkSize) {
+			List<TradeBar> chunk = bars.subList(from, Math.min(from + chunkSize, bars.size()));
+			int[] chunkUpdated = {0};
+			
+			dbManager.getTransaction().begin();
+			try {
+				session.doWork((connection) -> {
+					try (
+						PreparedStatement insert = connection.prepareStatement(INSERT_SQL);
+						PreparedStatement update = connection.prepareStatement(UPDATE_SQL)
+					) {
+						for (TradeBar bar : chunk) {
+							PreparedStatement statement;
+							// a repeated bar in the same load replaces the first
+							if (stored.add(bar.getDatetime())) {
+								statement = insert;
+							}
+							else {
+								statement = update;
+								chunkUpdated[0]++;
+							}
+							
+							statement.setFloat(1, bar.getOpen());
+							statement.setFloat(2, bar.getHigh());
+							statement.setFloat(3, bar.getLow());
+							statement.setFloat(4, bar.getClose());
+							statement.setString(5, security.getSymbol());
+							statement.setString(6, security.getExchange());
+							statement.setTimestamp(7, Timestamp.valueOf(bar.getDatetime()));
+							statement.setString(8, barWidth);
+							statement.addBatch();
+						}
+						
+						insert.executeBatch();
+						update.executeBatch();
+					}
+				});
+				dbManager.getTransaction().commit();
+				updated += chunkUpdated[0];
+			}
+			catch (RuntimeException e) {
+				if (dbManager.getTransaction().isActive()) {
+					dbManager.getTransaction().rollback();
+				}
+				System.out.println(
+					"ERROR failed to load bars " + from + " to " + (from + chunk.size()) + " of " + security +
+					": " + e.getMessage()
+				);
+				throw e;
+			}
+		}
+		
+		long nanos = java.lang.System.nanoTime() - start;
+		totalRows.addAndGet(bars.size());
+		totalNanos.addAndGet(nanos);
+		System.out.println(
+			"INFO loaded " + bars.size() + " " + barWidth + " bars of " + security + ", replacing " + updated + 
+			", in " + (nanos / 1000000) + " ms (" + rate(bars.size(), nanos) + ")"
+		);
+		
+		return bars.size();
+	}
+	
+	/**
+	 * @param dbManager
+	 * @param security
+	 * @param barWidth
+	 * @param bars
+	 * 
+	 * @return Datetimes of the stored bars of the given security and width, between the first and last of the given
+	 * bars.
+	 */
+	@SuppressWarnings("unchecked")
+	private Set<LocalDateTime> loadDatetimes(EntityManager dbManager, Security security, String barWidth, List<TradeBar> bars) {
+		LocalDateTime first = bars.get(0).getDatetime();
+		LocalDateTime last = first;
+		for (TradeBar bar : bars) {
+			if (bar.getDatetime().isBefore(first)) {
+				first = bar.getDatetime();
+			}
+			else if (bar.getDatetime().isAfter(last)) {
+				last = bar.getDatetime();
+			}
+		}
+		
+		List<LocalDateTime> datetimes = (List<LocalDateTime>) QueryTemplates.createQuery(dbManager, "TradeBarLoader.datetimes", () ->
+			String.format(
+				"select t.%5$s from %1$s t " +
+				"where t.%2$s = :securitySymbol and t.%3$s = :securityExchange and t.%4$s = :barWidth " +
+				"and t.%5$s between :first and :last",
+				TradeBar.DB_TABLE,
+				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_SYMBOL,
+				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_EXCHANGE,
+				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_WIDTH,
+				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_DATETIME
+			)
+		)
+		.setParameter("securitySymbol", security.getSymbol())
+		.setParameter("securityExchange", security.getExchange())
+		.setParameter("barWidth", barWidth)
+		.setParameter("first", first)
+		.setParameter("last", last)
+		.getResultList();
+		
+		return new HashSet<>(datetimes);
+	}
+	
+	private static String rate(long rows, long nanos) {
+		return nanos == 0 ? "-" : String.format("%.0f rows/s", rows * 1e9 / nanos);
+	}
+	
+	public long getTotalRows() {
+		return totalRows.get();
+	}
+	
+	/**
+	 * @return Summary of every load so far, for logging.
+	 */
+	public String getSummary() {
+		long rows = totalRows.get();
+		long nanos = totalNanos.get();
+		return "trade bar loader: " + rows + " rows in " + (nanos / 1000000) + " ms (" + rate(rows, nanos) + ")";
+	}
+}
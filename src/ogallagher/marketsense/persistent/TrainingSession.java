@@ -5,8 +5,13 @@ import java.time.LocalDateTime;
 import java.time.Period;
 import java.time.temporal.TemporalUnit;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 
 import javax.persistence.Convert;
 import javax.persistence.EmbeddedId;
@@ -15,8 +20,6 @@ import javax.persistence.EntityManager;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinColumns;
 import javax.persistence.ManyToOne;
-import javax.persistence.NoResultException;
-import javax.persistence.Query;
 import javax.persistence.Transient;
 import javax.sound.sampled.SourceDataLine;
 
@@ -34,9 +37,12 @@ import javafx.beans.value.ObservableValue;
 import javafx.scene.control.ListCell;
 import ogallagher.marketsense.MarketSample;
 import ogallagher.marketsense.MarketSynth;
+import ogallagher.marketsense.SampleRecord;
+import ogallagher.marketsense.SampleSchedule;
+import ogallagher.marketsense.UniverseCollector;
 import ogallagher.marketsense.util.ConfidenceZscore;
 import ogallagher.marketsense.util.DatetimeUtils;
-import ogallagher.twelvedata_client_java.TwelvedataClient;
+import ogallagher.marketsense.util.IntervalSet;
 import ogallagher.twelvedata_client_java.TwelvedataInterface.BarInterval;
 import ogallagher.twelvedata_client_java.TwelvedataInterface.Failure;
 import ogallagher.twelvedata_client_java.TwelvedataInterface.TimeSeries;
@@ -46,7 +52,7 @@ import ogallagher.twelvedata_client_java.TwelvedataInterface.TimeSeries;
  * 
  * @author Owen Gallagher
  * @since 2021-08-10
- *
+ * 
  */
 @Entity
 public class TrainingSession {
@@ -99,6 +105,12 @@ public class TrainingSession {
 	public static final String DB_COL_MAX_LOOKBACK_MONTHS = "maxLookbackMonths";
 	private int maxLookbackMonths;
 	
+	public static final String DB_COL_SEED = "seed";
+	/**
+	 * Seed of the {@link SampleSchedule} of the session, or {@code null} for sessions from before it was kept.
+	 */
+	private Long seed;
+	
 	public static final String DB_COL_SCORE = "score";
 	/**
 	 * The accuracy score of the user for this session, calculated as an average of all scores
@@ -139,6 +151,17 @@ public class TrainingSession {
 	@Transient
 	private LocalDateTime before;
 	
+	/**
+	 * Sample window ends, created once the universe bounds are final.
+	 */
+	@Transient
+	private SampleSchedule schedule = null;
+	/**
+	 * Number of window ends taken from the {@link #schedule}.
+	 */
+	@Transient
+	private int scheduled = 0;
+	
 	/**
 	 * Current sample number, in training progress, between {@code 0} and {@link sampleCount sampleCount-1}.
 	 */
@@ -154,6 +177,24 @@ public class TrainingSession {
 	@Transient
 	private MarketSample sample;
 	
+	/**
+	 * Records of the samples already taken, in order.
+	 */
+	@Transient
+	private ArrayList<SampleRecord> history;
+	
+	/**
+	 * Samples already prepared by {@link #prepareSamples(BarRepository, MarketSynth)}, in order of use.
+	 */
+	@Transient
+	private ConcurrentLinkedQueue<MarketSample> readySamples = new ConcurrentLinkedQueue<>();
+	/**
+	 * Pending preparation of a sample on a worker by {@link #prefetchSample(BarRepository, MarketSynth, Executor)},
+	 * or {@code null}.
+	 */
+	@Transient
+	private CompletableFuture<Void> prefetch = null;
+	
 	/**
 	 * Whether or not the training session was completed.
 	 */
@@ -188,8 +229,31 @@ public class TrainingSession {
 		this(new Person(), TrainingSessionType.TBD, new Security(), BarInterval.DY_1, 0, 0, 0);
 	}
 	
+	/**
+	 * Create a training session whose samples are chosen with a random seed.
+	 */
 	public TrainingSession(Person person, TrainingSessionType type, Security security, String barWidth, int sampleSize, int sampleCount, int maxLookbackMonths) {
+		this(person, type, security, barWidth, sampleSize, sampleCount, maxLookbackMonths, new Random().nextLong());
+	}
+	
+	/**
+	 * Full constructor.
+	 * 
+	 * @param person
+	 * @param type
+	 * @param security
+	 * @param barWidth
+	 * @param sampleSize
+	 * @param sampleCount
+	 * @param maxLookbackMonths
+	 * @param seed Seed of the {@link SampleSchedule} that chooses the sample windows.
+	 */
+	public TrainingSession(
+			Person person, TrainingSessionType type, Security security, String barWidth, 
+			int sampleSize, int sampleCount, int maxLookbackMonths, long seed
+		) {
 		this.id = new TrainingSessionId(person);
+		this.seed = seed;
 		
 		this.type = type;
 		end = null;
@@ -211,6 +275,7 @@ public class TrainingSession {
 		});
 		
 		sampleScores = new ArrayList<>(this.sampleCount);
+		history = new ArrayList<>(this.sampleCount);
 		
 		// calculate market data universe bounds: after .. before
 		LocalDateTime now = id.getStart();
@@ -228,206 +293,366 @@ public class TrainingSession {
 		before = DatetimeUtils.backwardFromWeekend(before);
 	}
 	
+	/**
+	 * @param barRepository Market data storage, whose bars of the universe are drawn from, or {@code null} to draw
+	 * by hour within the universe bounds.
+	 * 
+	 * @return The sample schedule of the session within the current universe bounds.
+	 */
+	public synchronized SampleSchedule getSchedule(BarRepository barRepository) {
+		if (schedule == null) {
+			schedule = new SampleSchedule(
+				security, barWidth, sampleSize, sampleCount, maxLookbackMonths, 
+				seed != null ? seed : 0, 
+				after, before,
+				barRepository != null ? barRepository.getSeries(security, barWidth) : null
+			);
+		}
+		return schedule;
+	}
+	
+	/**
+	 * @param barRepository
+	 * 
+	 * @return End of the next sample window in the {@link #getSchedule(BarRepository) schedule}.
+	 */
+	private synchronized LocalDateTime nextSampleEnd(BarRepository barRepository) {
+		return getSchedule(barRepository).getEnd(scheduled++);
+	}
+	
+	/**
+	 * Choose the windows of all remaining samples in the session and prepare them together, from a single read of
+	 * the market universe and with sounds synthesized in parallel. {@link #nextSample(BarRepository, MarketSynth)}
+	 * then takes each from the ready queue instead of preparing it.
+	 * 
+	 * @param barRepository Market data storage.
+	 * @param marketSynth Market data sound synthesizer.
+	 * 
+	 * @return Number of samples prepared.
+	 */
+	public int prepareSamples(BarRepository barRepository, MarketSynth marketSynth) {
+		int taken = (sample == null) ? 0 : sampleId.get() + 1;
+		int remaining = sampleCount - taken - readySamples.size();
+		
+		List<MarketSample> samples = new ArrayList<>(Math.max(0, remaining));
+		for (int s=0; s<remaining; s++) {
+			samples.add(new MarketSample(security, nextSampleEnd(barRepository), sampleSize, barWidth));
+		}
+		
+		long start = System.nanoTime();
+		MarketSample.prepareBatch(samples, barRepository, marketSynth);
+		readySamples.addAll(samples);
+		
+		System.out.println(
+			"DEBUG prepared " + samples.size() + " training samples in " 
+			+ (System.nanoTime() - start) / 1000000 + " ms"
+		);
+		return samples.size();
+	}
+	
+	/**
+	 * Make sure the sample after the current one is ready, preparing it on the given executor if needed, so that
+	 * {@link #nextSample(BarRepository, MarketSynth)} takes it without preparing it on the calling thread. Should be
+	 * called from the same thread as {@code nextSample}.
+	 * 
+	 * @param barRepository Market data storage.
+	 * @param marketSynth Market data sound synthesizer.
+	 * @param executor Worker where the sample is prepared.
+	 * 
+	 * @return Completes once the next sample is ready, or at once if it already is or the session has no more samples.
+	 */
+	public synchronized CompletableFuture<Void> prefetchSample(
+			BarRepository barRepository, MarketSynth marketSynth, Executor executor
+		) {
+		if (prefetch != null && !prefetch.isDone()) {
+			return prefetch;
+		}
+		
+		int taken = (sample == null) ? 0 : sampleId.get() + 1;
+		if (!readySamples.isEmpty() || taken >= sampleCount) {
+			return CompletableFuture.completedFuture(null);
+		}
+		
+		prefetch = CompletableFuture.runAsync(() -> {
+			MarketSample next = new MarketSample(security, nextSampleEnd(barRepository), sampleSize, barWidth);
+			next.prepare(barRepository, marketSynth);
+			readySamples.add(next);
+			System.out.println("DEBUG prefetched training sample " + next);
+		}, executor);
+		return prefetch;
+	}
+	
 	/**
 	 * Creates a new market sample if the training session is not complete. Otherwise, {@code null} is returned.
 	 * 
-	 * @param dbManager Persistence entity manager for accessing the database.
+	 * @param barRepository Market data storage.
 	 * @param marketSynth Market data sound synthesizer.
 	 * @return The new market sample, or {@code null} if the training session was completed.
 	 */
-	public MarketSample nextSample(EntityManager dbManager, MarketSynth marketSynth) {
+	public MarketSample nextSample(BarRepository barRepository, MarketSynth marketSynth) {
+		MarketSample previous = sample;
+		
 		if (sample != null) {
+			// keep a record of the taken sample
+			SampleRecord record = sample.toRecord();
+			if (record != null) {
+				history.add(record);
+			}
+			
 			// increment sample id
 			sampleId.set(sampleId.get()+1);
 		}
 		
 		if (!complete.get()) {
-			int sampleOffsetHours = (int) (Math.random() * (Duration.between(after, before).getSeconds()/(DatetimeUtils.SECS_PER_HR)));
-			LocalDateTime end = BarInterval.offsetBars(after.plusHours(sampleOffsetHours), barWidth, sampleSize);
+			sample = readySamples.poll();
+			
+			if (sample == null) {
+				sample = new MarketSample(security, nextSampleEnd(barRepository), sampleSize, barWidth);
+				sample.prepare(barRepository, marketSynth);
+			}
 			
-			sample = new MarketSample(security, end, sampleSize, barWidth);
-			sample.prepare(dbManager, marketSynth);
+			// previous sample is discarded only once replaced
+			discard(previous, marketSynth);
 			
 			System.out.println("DEBUG prepared next training sample " + sample);
 			return sample;
 		}
 		else {
+			discard(previous, marketSynth);
+			
 			return null;
 		}
 	}
 	
+	/**
+	 * Abort the session, stopping playback and releasing the sounds of the current sample and of every sample
+	 * already prepared. A sample still being prefetched is released once ready.
+	 * 
+	 * @param marketSynth Synth that may be playing the current sample.
+	 */
+	public synchronized void abort(MarketSynth marketSynth) {
+		discard(sample, marketSynth);
+		releaseReadySamples();
+		
+		if (prefetch != null && !prefetch.isDone()) {
+			prefetch.thenRun(this::releaseReadySamples);
+		}
+	}
+	
+	/**
+	 * Release the sounds of the samples in the ready queue, emptying it.
+	 */
+	private void releaseReadySamples() {
+		MarketSample ready;
+		while ((ready = readySamples.poll()) != null) {
+			ready.release();
+		}
+	}
+	
+	/**
+	 * Release the sound buffer of a discarded sample, after stopping its playback, since the pooled buffer is
+	 * reused by the next sound of the same length.
+	 * 
+	 * @param sample Discarded sample, or {@code null}.
+	 * @param marketSynth Synth that may be playing the sample, or {@code null} if it was never played.
+	 */
+	private static void discard(MarketSample sample, MarketSynth marketSynth) {
+		if (sample != null) {
+			if (marketSynth != null && !marketSynth.stopPlayback()) {
+				// leave the buffer to the garbage collector rather than overwrite a sound still playing
+				System.out.println("WARNING playback of " + sample + " did not stop; not releasing its sound");
+				return;
+			}
+			sample.release();
+		}
+	}
+	
 	/**
 	 * In order to extract samples from historical market data, that population/universe from which the trade bars are
-	 * taken needs to exist in the database.
+	 * taken needs to exist in the bar repository.
 	 * 
-	 * Note that this works with the assumption that universes will always be defined as an interval from a lookback to the present,
-	 * so there are never any holes between the start and end datetimes.
+	 * Only the sub-intervals of the universe missing from the repository's {@link BarRepository#getCoverage(Security, String)
+	 * coverage} are fetched, so a universe already collected by an earlier session needs no market data requests. 
+	 * Fetches go through the collector, so they share its rate limit and are retried when the limit is exceeded.
 	 * 
 	 * Note that ideal universe bounds won't necessarily match valid market calendars and market hours, so in cases where this is
-	 * expected, the universe bounds {@link #after} .. {@link #before} will be updated to match what the database does have.
+	 * expected, the universe bounds {@link #after} .. {@link #before} will be updated to match what the repository does have.
 	 * 
-	 * @return The failure, or {@code null} if the needed market data is now in the database.
+	 * @return The failure, or {@code null} if the needed market data is now in the repository.
 	 */
-	public Failure collectMarketUniverse(EntityManager dbManager, TwelvedataClient marketClient) {
-		Failure result = null;
-		
-		boolean firstUp = false;
-		boolean lastDown = false;
-		
-		TradeBar first = new TradeBar(security, after, barWidth);
-		TradeBar last = new TradeBar(security, BarInterval.offsetBars(before, barWidth, sampleSize), barWidth);
-		System.out.println("DEBUG ensure market universe for " + first.getDatetime() + " to " + last.getDatetime());
+	public Failure collectMarketUniverse(BarRepository barRepository, UniverseCollector collector) {
+		LocalDateTime first = after;
+		LocalDateTime last = BarInterval.offsetBars(before, barWidth, sampleSize);
+		System.out.println("DEBUG ensure market universe for " + first + " to " + last);
 		
-		TradeBar preLast = null, postFirst = null;
-		
-		dbManager.getTransaction().begin();
-		if (result == null && !dbManager.contains(first)) {
-			// move forward to find earliest bar after first
-			String qstr = String.format(
-				"select t from %5$s t " + 
-				"where t.%1$s = :secSymbol and t.%2$s = :secExchange " + 
-				"and t.%3$s = :barWidth and t.%4$s > :datetime " + 
-				"order by t.%4$s asc",
-				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_SYMBOL,
-				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_EXCHANGE,
-				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_WIDTH,
-				TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_DATETIME,
-				TradeBar.DB_TABLE
-			);
-			System.out.println("DEBUG " + qstr);
-			Query query = dbManager.createQuery(qstr);
-			query.setMaxResults(1);
-			
-			query.setParameter("secSymbol", security.getSymbol());
-			query.setParameter("secExchange", security.getExchange());
-			query.setParameter("barWidth", barWidth);
-			query.setParameter("datetime", first.getDatetime());
-			
+		List<long[]> missing = getMissingIntervals(barRepository, security, barWidth, first, last);
+		while (!missing.isEmpty()) {
+			long[] interval = missing.remove(0);
 			try {
-				preLast = (TradeBar) query.getSingleResult();
-			}
-			catch (NoResultException e) {
-				preLast = last;
-				
-				System.out.println("WARNING " + e.getMessage());
-				System.out.println("failed to fetch first in market universe after " + first.getDatetime() + "; using last");
-			}
-			
-			// fetch trade bars from first to preLast
-			TimeSeries timeSeries = marketClient.fetchTimeSeries(
-				security.getSymbol(), barWidth, 
-				first.getDatetime(), BarInterval.offsetBars(preLast.getDatetime(), barWidth, -1)
-			);
-			if (!timeSeries.isFailure()) {
-				// convert to db-compat trade bars and persist
-				List<TradeBar> bars = TradeBar.convertTimeSeries(timeSeries, Comparator.naturalOrder());
+				TimeSeries timeSeries = collector.fetchTimeSeries(
+					security.getSymbol(), barWidth, getIntervalStart(interval), getIntervalEnd(interval, barWidth)
+				);
 				
-				for (TradeBar bar : bars) {
-					dbManager.persist(bar);
+				Failure failure = storeInterval(barRepository, security, barWidth, interval, timeSeries);
+				if (failure != null) {
+					return failure;
 				}
-				System.out.println("persisted " + bars.size() + " new bars");
+				
+				// a response cut at the row limit leaves the start of the interval missing
+				missing.addAll(0, getMissingIntervals(barRepository, security, barWidth, interval));
 			}
-			else {
-				Failure f = (Failure) timeSeries;
-				switch (f.code) {
-					case Failure.ErrorCode.API_KEY:
-					case Failure.ErrorCode.CALL_LIMIT:
-					case Failure.ErrorCode.NO_COMMS:
-					case Failure.ErrorCode.NULL_RESPONSE:
-						result = f;
-						break;
-						
-					default:
-						System.out.println(
-							"WARNING failed to fetch first-prelast for universe, perhaps no bars exist: " + f.toString()
-						);
-						// update first to be preLast
-						firstUp = true;
-						break;
-				}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				System.out.println("WARNING interrupted market universe collection; using the bars present");
+				break;
 			}
 		}
-		dbManager.getTransaction().commit();
 		
-		dbManager.getTransaction().begin();
-		if (result == null && !dbManager.contains(last)) {
-			// move backward to find latest bar before last
-			Query query = dbManager.createQuery(
-				String.format(
-					"select t from %5$s t " + 
-					"where t.%1$s = :secSymbol and t.%2$s = :secExchange " + 
-					"and t.%3$s = :barWidth and t.%4$s < :datetime " + 
-					"order by t.%4$s desc",
-					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_SYMBOL,
-					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_SECURITY + "." + Security.DB_COL_ID + "." + SecurityId.DB_COL_EXCHANGE,
-					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_WIDTH,
-					TradeBar.DB_COMPCOL_ID + "." + TradeBarId.DB_COL_DATETIME,
-					TradeBar.DB_TABLE
-				)
-			);
-			query.setMaxResults(1);
-			
-			query.setParameter("secSymbol", security.getSymbol());
-			query.setParameter("secExchange", security.getExchange());
-			query.setParameter("barWidth", barWidth);
-			query.setParameter("datetime", last.getDatetime());
+		// trim universe bounds to the bars present
+		BarSeries series = barRepository.getSeries(security, barWidth);
+		int firstIndex = series.ceiling(first);
+		int lastIndex = series.floor(last);
+		if (firstIndex <= lastIndex) {
+			after = series.getDatetime(firstIndex);
 			
-			try {
-				postFirst = (TradeBar) query.getSingleResult();
-			}
-			catch (NoResultException e) {
-				postFirst = first;
-				
-				System.out.println("WARNING " + e.getMessage());
-				System.out.println("failed to fetch last in market universe before " + last.getDatetime() + "; using first");
+			LocalDateTime lastBefore = BarInterval.offsetBars(series.getDatetime(lastIndex), barWidth, -sampleSize);
+			if (lastBefore.isBefore(before)) {
+				before = lastBefore;
 			}
+		}
+		else {
+			System.out.println("WARNING no bars in market universe from " + first + " to " + last);
+		}
+		// draw from the collected bars
+		schedule = null;
+		System.out.println("DEBUG universe trimmed to " + after + " to " + BarInterval.offsetBars(before, barWidth, sampleSize));
+		
+		return null;
+	}
+	
+	/**
+	 * Find the intervals of a market universe not yet covered by a bar repository. A repository with bars but no 
+	 * recorded coverage, from before coverage was recorded, is assumed to cover the interval from its first to its 
+	 * last bar.
+	 * 
+	 * @param barRepository
+	 * @param security
+	 * @param barWidth
+	 * @param first Datetime of the first bar needed.
+	 * @param last Datetime of the last bar needed.
+	 * 
+	 * @return Intervals of epoch seconds between the first and last bars that are not yet covered, in order.
+	 */
+	public static List<long[]> getMissingIntervals(
+			BarRepository barRepository, Security security, String barWidth, LocalDateTime first, LocalDateTime last
+		) {
+		IntervalSet coverage = barRepository.getCoverage(security, barWidth);
+		if (coverage.isEmpty()) {
+			BarSeries series = barRepository.getSeries(security, barWidth);
 			
-			// fetch trade bars from postFirst to last
-			TimeSeries timeSeries = marketClient.fetchTimeSeries(
-				security.getSymbol(), barWidth, 
-				BarInterval.offsetBars(postFirst.getDatetime(), barWidth, 1), last.getDatetime()
-			);
-			if (!timeSeries.isFailure()) {
-				// convert to db-compat trade bars and persist
-				List<TradeBar> bars = TradeBar.convertTimeSeries(timeSeries, Comparator.naturalOrder());
-				
-				for (TradeBar bar : bars) {
-					dbManager.persist(bar);
-				}
-				System.out.println("persisted " + bars.size() + " new bars");
-			}
-			else {
-				Failure f = (Failure) timeSeries;
-				switch (f.code) {
-					case Failure.ErrorCode.API_KEY:
-					case Failure.ErrorCode.CALL_LIMIT:
-					case Failure.ErrorCode.NO_COMMS:
-					case Failure.ErrorCode.NULL_RESPONSE:
-						result = f;
-						break;
-						
-					default:
-						System.out.println("WARNING failed to fetch postfirst-last for universe, perhaps no bars exist: " + f);
-						// update last to be postFirst
-						lastDown = true;
-						break;
-				}
-				
+			if (series.size() > 0) {
+				long stored = BarSeries.toEpoch(BarInterval.offsetBars(series.getDatetime(series.size()-1), barWidth, 1));
+				barRepository.addCoverage(security, barWidth, series.getEpoch(0), stored);
+				coverage.add(series.getEpoch(0), stored);
+				System.out.println("INFO assumed coverage of " + series + " from its first to last bar");
 			}
 		}
-		dbManager.getTransaction().commit();
 		
-		if (result == null) {
-			if (firstUp) {
-				after = preLast.getDatetime();
+		// coverage intervals are half-open, so end after the last bar
+		List<long[]> missing = coverage.missing(
+			BarSeries.toEpoch(first), 
+			BarSeries.toEpoch(BarInterval.offsetBars(last, barWidth, 1))
+		);
+		System.out.println(
+			"DEBUG market universe of " + security.getSymbol() + " " + barWidth + " is missing " + missing.size() + " intervals"
+		);
+		
+		return missing;
+	}
+	
+	/**
+	 * @param barRepository
+	 * @param security
+	 * @param barWidth
+	 * @param interval Interval just stored with {@link #storeInterval(BarRepository, Security, String, long[], TimeSeries)}.
+	 * 
+	 * @return Parts of the interval still not covered, in order.
+	 */
+	public static List<long[]> getMissingIntervals(
+			BarRepository barRepository, Security security, String barWidth, long[] interval
+		) {
+		return barRepository.getCoverage(security, barWidth).missing(interval[0], interval[1]);
+	}
+	
+	/**
+	 * @return Datetime of the first bar to fetch for a missing interval.
+	 */
+	public static LocalDateTime getIntervalStart(long[] interval) {
+		return BarSeries.toDatetime(interval[0]);
+	}
+	
+	/**
+	 * @return Datetime of the last bar to fetch for a missing interval, whose end is exclusive.
+	 */
+	public static LocalDateTime getIntervalEnd(long[] interval, String barWidth) {
+		return BarInterval.offsetBars(BarSeries.toDatetime(interval[1]), barWidth, -1);
+	}
+	
+	/**
+	 * Store the bars fetched for a missing interval, and record the interval as covered. A response of
+	 * {@link UniverseCollector#TIME_SERIES_ROWS_MAX} bars may be cut short, holding only the latest bars of the
+	 * interval, so it only covers the interval from its first bar.
+	 * 
+	 * @param barRepository
+	 * @param security
+	 * @param barWidth
+	 * @param interval Missing interval, from {@link #getMissingIntervals(BarRepository, Security, String, LocalDateTime, LocalDateTime)}.
+	 * @param timeSeries Fetched bars of the interval, or a failure.
+	 * 
+	 * @return The failure if the interval should be fetched again later, in which case it is not covered, or 
+	 * {@code null}.
+	 */
+	public static Failure storeInterval(
+			BarRepository barRepository, Security security, String barWidth, long[] interval, TimeSeries timeSeries
+		) {
+		LocalDateTime start = getIntervalStart(interval);
+		LocalDateTime end = getIntervalEnd(interval, barWidth);
+		long covered = interval[0];
+		
+		if (!timeSeries.isFailure()) {
+			// convert to db-compat trade bars and persist
+			List<TradeBar> bars = TradeBar.convertTimeSeries(timeSeries, Comparator.naturalOrder());
+			
+			barRepository.addBars(security, barWidth, bars);
+			System.out.println("persisted " + bars.size() + " new bars of " + security.getSymbol() + " from " + start + " to " + end);
+			
+			if (bars.size() >= UniverseCollector.TIME_SERIES_ROWS_MAX) {
+				covered = Math.max(covered, BarSeries.toEpoch(bars.get(0).getDatetime()));
+				System.out.println(
+					"INFO response reached the row limit; covered " + security.getSymbol() + " from " + bars.get(0).getDatetime()
+				);
 			}
-			if (lastDown) {
-				before = BarInterval.offsetBars(postFirst.getDatetime(), barWidth, -sampleSize);
+		}
+		else {
+			Failure f = (Failure) timeSeries;
+			switch (f.code) {
+				case Failure.ErrorCode.API_KEY:
+				case Failure.ErrorCode.CALL_LIMIT:
+				case Failure.ErrorCode.NO_COMMS:
+				case Failure.ErrorCode.NULL_RESPONSE:
+					return f;
+				
+				default:
+					// the interval is still covered, so it is not requested again
+					System.out.println(
+						"WARNING failed to fetch " + start + " to " + end + " for universe, perhaps no bars exist: " + f
+					);
+					break;
 			}
-			System.out.println("DEBUG universe trimmed to " + first.getDatetime() + " to " + last.getDatetime());
 		}
 		
-		return result;
+		barRepository.addCoverage(security, barWidth, covered, interval[1]);
+		return null;
 	}
 	
 	/**
@@ -461,6 +686,13 @@ public class TrainingSession {
 		return scoreIntervalConfidence.getZscore() * scoreDeviation.get();
 	}
 	
+	/**
+	 * @return Records of the samples already taken, in order.
+	 */
+	public List<SampleRecord> getHistory() {
+		return Collections.unmodifiableList(history);
+	}
+	
 	public MarketSample getSample() {
 		return sample;
 	}
@@ -506,6 +738,13 @@ public class TrainingSession {
 		TrainingSession.scoreIntervalConfidence = scoreIntervalConfidence;
 	}
 	
+	/**
+	 * @return Seed of the sample schedule, or {@code null} if not kept for this session.
+	 */
+	public Long getSeed() {
+		return seed;
+	}
+	
 	public int getMaxLookbackMonths() {
 		return maxLookbackMonths;
 	}
@@ -1,18 +1,45 @@
 package ogallagher.marketsense.test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
 
+import ogallagher.marketsense.MarketSample;
+import ogallagher.marketsense.MarketSynth;
+import ogallagher.marketsense.SampleCache;
+import ogallagher.marketsense.SampleSchedule;
+import ogallagher.marketsense.SampleRecord;
+import ogallagher.marketsense.persistent.BarCoverage;
+import ogallagher.marketsense.persistent.BarCoverageId;
+import ogallagher.marketsense.persistent.BarRepository;
+import ogallagher.marketsense.persistent.BarSeries;
+import ogallagher.marketsense.persistent.BarSeriesCache;
+import ogallagher.marketsense.persistent.DbAccess;
+import ogallagher.marketsense.persistent.DbBarRepository;
+import ogallagher.marketsense.persistent.FileBarRepository;
 import ogallagher.marketsense.persistent.Person;
+import ogallagher.marketsense.persistent.QueryTemplates;
 import ogallagher.marketsense.persistent.Security;
 import ogallagher.marketsense.persistent.SecurityId;
 import ogallagher.marketsense.persistent.SecurityType;
 import ogallagher.marketsense.persistent.TradeBar;
+import ogallagher.marketsense.persistent.TradeBarId;
 import ogallagher.marketsense.persistent.TrainingSession;
 import ogallagher.marketsense.persistent.TrainingSessionType;
+import ogallagher.marketsense.util.IntervalSet;
 import ogallagher.temp_fx_logger.System;
 import ogallagher.twelvedata_client_java.TwelvedataInterface.BarInterval;
 
@@ -217,6 +244,549 @@ public class TestDatabase extends Test {
 		}
 	}
 	
+	/**
+	 * Delete a dummy security, once its bars and coverage are deleted.
+	 * 
+	 * @param security
+	 */
+	private void deleteDummySecurity(Security security) {
+		dbManager.getTransaction().begin();
+		Security stored = dbManager.find(Security.class, security.getId());
+		if (stored != null) {
+			dbManager.remove(stored);
+		}
+		dbManager.getTransaction().commit();
+	}
+	
+	/**
+	 * Samples cut from a cached bar series should match those queried from the database.
+	 */
+	public void barSeriesCache() {
+		Security security = new Security("EEE", "XXX", SecurityType.STOCK);
+		String barWidth = BarInterval.DY_1;
+		LocalDateTime first = LocalDateTime.of(2020, 1, 1, 0, 0);
+		int barCount = 60;
+		System.out.println("testing bar series cache with " + barCount + " dummy trade bars");
+		
+		Random random = new Random(barCount);
+		TradeBar[] dummyBars = new TradeBar[barCount];
+		dbManager.getTransaction().begin();
+		if (dbManager.find(Security.class, security.getId()) == null) {
+			dbManager.persist(security);
+		}
+		for (int b=0; b<barCount; b++) {
+			float close = 10 + random.nextFloat();
+			dummyBars[b] = new TradeBar(security, first.plusDays(b), barWidth, close, close, close, close);
+			dbManager.persist(dummyBars[b]);
+		}
+		dbManager.getTransaction().commit();
+		BarSeriesCache.invalidate(security, barWidth);
+		
+		MarketSynth marketSynth = new MarketSynth();
+		boolean enabled = BarSeriesCache.isEnabled();
+		long misses = BarSeriesCache.getMisses();
+		
+		for (int s=0; s<20; s++) {
+			int sampleSize = 2 + random.nextInt(20);
+			LocalDateTime end = first.plusDays(sampleSize + random.nextInt(barCount - sampleSize));
+			
+			MarketSample[] samples = new MarketSample[2];
+			for (int c=0; c<2; c++) {
+				BarSeriesCache.setEnabled(c == 0);
+				samples[c] = (s % 2 == 0)
+					? new MarketSample(security, end, sampleSize, barWidth)
+					: new MarketSample(security, end.minusDays(sampleSize), end, barWidth);
+				samples[c].prepare(dbManager, marketSynth);
+				samples[c].release();
+			}
+			
+			List<TradeBar> cached = samples[0].getBars(), queried = samples[1].getBars();
+			boolean match = cached.size() == queried.size()
+				&& samples[0].getFutureMovement() == samples[1].getFutureMovement()
+				&& samples[0].getFuture().getDatetime().equals(samples[1].getFuture().getDatetime());
+			for (int b=0; match && b<cached.size(); b++) {
+				match = cached.get(b).getClose() == queried.get(b).getClose()
+					&& cached.get(b).getDatetime().equals(queried.get(b).getDatetime());
+			}
+			
+			if (!match) {
+				System.out.println("ERROR cached sample " + samples[0] + " does not match queried sample");
+			}
+		}
+		BarSeriesCache.setEnabled(enabled);
+		System.out.println("bar series loaded " + (BarSeriesCache.getMisses() - misses) + " times for 20 samples");
+		
+		// samples prepared in a batch should match those prepared one at a time
+		List<MarketSample> batch = new ArrayList<>();
+		for (int s=0; s<20; s++) {
+			batch.add(new MarketSample(security, first.plusDays(20 + random.nextInt(barCount - 20)), 10, barWidth));
+		}
+		MarketSample.prepareBatch(batch, new DbBarRepository(dbManager), marketSynth);
+		long sampleCacheHits = SampleCache.getMemoryTier().getHitCount();
+		
+		for (MarketSample batched : batch) {
+			MarketSample single = new MarketSample(security, batched.getFuture().getDatetime(), 10, barWidth);
+			single.prepare(dbManager, marketSynth);
+			
+			if (batched.getFutureMovement() != single.getFutureMovement() 
+				|| batched.getSound().getFrameLength() != single.getSound().getFrameLength()) {
+				System.out.println("ERROR batch prepared sample " + batched + " does not match single prepared sample");
+			}
+			
+			SampleRecord record = batched.toRecord();
+			if (record.size() != 10 || record.getFutureClose() != batched.getFuture().getClose()
+				|| record.getFutureMovement() != (float) batched.getFutureMovement()
+				|| !record.getStart().equals(batched.getBars().get(0).getDatetime())) {
+				System.out.println("ERROR sample record " + record + " does not match sample " + batched);
+			}
+			
+			// replaying a record should leave its closes unchanged
+			record.synthesize(marketSynth).release();
+			for (int c=0; c<record.size(); c++) {
+				if (record.getClose(c) != batched.getBars().get(c).getClose()) {
+					System.out.println("ERROR sample record " + record + " closes changed by synthesis");
+					break;
+				}
+			}
+			
+			batched.release();
+			single.release();
+		}
+		
+		// single samples of the same windows should copy the sounds of the batch
+		if (SampleCache.isEnabled() && SampleCache.getMemoryTier().getHitCount() - sampleCacheHits != batch.size()) {
+			System.out.println("ERROR sample cache missed samples already prepared: " + SampleCache.getSummary());
+		}
+		
+		// a window whose bars were replaced should not copy the sound of the old bars
+		if (SampleCache.isEnabled()) {
+			MarketSample before = new MarketSample(security, first.plusDays(30), 10, barWidth);
+			before.prepare(dbManager, marketSynth);
+			before.release();
+			
+			float close = dummyBars[25].getClose() + 1;
+			dbManager.getTransaction().begin();
+			dbManager.merge(new TradeBar(security, first.plusDays(25), barWidth, close, close, close, close));
+			dbManager.getTransaction().commit();
+			BarSeriesCache.invalidate(security, barWidth);
+			
+			sampleCacheHits = SampleCache.getMemoryTier().getHitCount();
+			MarketSample after = new MarketSample(security, first.plusDays(30), 10, barWidth);
+			after.prepare(dbManager, marketSynth);
+			after.release();
+			
+			if (SampleCache.getMemoryTier().getHitCount() != sampleCacheHits) {
+				System.out.println("ERROR sample cache copied the sound of replaced bars for " + after);
+			}
+		}
+		
+		// delete dummy trade bars
+		dbManager.getTransaction().begin();
+		for (TradeBar db : dummyBars) {
+			dbManager.remove(db);
+		}
+		dbManager.getTransaction().commit();
+		BarSeriesCache.invalidate(security, barWidth);
+		deleteDummySecurity(security);
+	}
+	
+	/**
+	 * Bars copied to a file bar store, and bars added to it out of order, should read back as stored.
+	 */
+	public void fileBarStore() {
+		Security security = new Security("FFF", "XXX", SecurityType.STOCK);
+		String barWidth = BarInterval.DY_1;
+		LocalDateTime first = LocalDateTime.of(2020, 1, 1, 0, 0);
+		int barCount = 30;
+		System.out.println("testing file bar store with " + barCount + " dummy trade bars");
+		
+		TradeBar[] dummyBars = new TradeBar[barCount];
+		dbManager.getTransaction().begin();
+		if (dbManager.find(Security.class, security.getId()) == null) {
+			dbManager.persist(security);
+		}
+		for (int b=0; b<barCount; b++) {
+			dummyBars[b] = new TradeBar(security, first.plusDays(b), barWidth, b, b+2, b-1, b+1);
+			dbManager.persist(dummyBars[b]);
+		}
+		dbManager.getTransaction().commit();
+		BarSeriesCache.invalidate(security, barWidth);
+		
+		try {
+			File dir = Files.createTempDirectory("marketsense_bars").toFile();
+			FileBarRepository store = new FileBarRepository(dir);
+			store.putSeries(BarSeries.load(dbManager, security, barWidth));
+			
+			BarSeries stored = store.getSeries(security, barWidth);
+			BarSeries queried = new DbBarRepository(dbManager).getSeries(security, barWidth);
+			boolean match = stored.size() == queried.size();
+			for (int b=0; match && b<stored.size(); b++) {
+				match = stored.getEpoch(b) == queried.getEpoch(b)
+					&& stored.getOpen(b) == queried.getOpen(b) && stored.getHigh(b) == queried.getHigh(b)
+					&& stored.getLow(b) == queried.getLow(b) && stored.getClose(b) == queried.getClose(b);
+			}
+			if (!match) {
+				System.out.println("ERROR copied series " + stored + " does not match " + queried);
+			}
+			
+			// append after, then merge before and within, replacing one bar
+			store.addBars(security, barWidth, Arrays.asList(
+				new TradeBar(security, first.plusDays(barCount), barWidth, 0, 0, 0, 100)
+			));
+			store.addBars(security, barWidth, Arrays.asList(
+				new TradeBar(security, first.minusDays(1), barWidth, 0, 0, 0, -1),
+				new TradeBar(security, first.plusDays(3), barWidth, 0, 0, 0, 50)
+			));
+			
+			stored = store.getSeries(security, barWidth);
+			if (stored.size() != barCount + 2 
+				|| stored.getClose(0) != -1 || stored.getClose(4) != 50 || stored.getClose(5) != 5 
+				|| stored.getClose(barCount + 1) != 100) {
+				System.out.println("ERROR file bar store did not merge added bars: " + stored);
+			}
+			
+			// append bars of the same datetime, keeping the last
+			store.addBars(security, barWidth, Arrays.asList(
+				new TradeBar(security, first.plusDays(barCount + 1), barWidth, 0, 0, 0, 200),
+				new TradeBar(security, first.plusDays(barCount + 1), barWidth, 0, 0, 0, 201)
+			));
+			
+			stored = store.getSeries(security, barWidth);
+			if (stored.size() != barCount + 3 || stored.getClose(barCount + 2) != 201) {
+				System.out.println("ERROR file bar store did not replace duplicate appended bars: " + stored);
+			}
+			
+			for (File widthDir : dir.listFiles()) {
+				for (File file : widthDir.listFiles()) {
+					file.delete();
+				}
+				widthDir.delete();
+			}
+			dir.delete();
+		}
+		catch (IOException e) {
+			System.out.println("ERROR failed to create file bar store: " + e.getMessage());
+		}
+		
+		// delete dummy trade bars
+		dbManager.getTransaction().begin();
+		for (TradeBar db : dummyBars) {
+			dbManager.remove(db);
+		}
+		dbManager.getTransaction().commit();
+		BarSeriesCache.invalidate(security, barWidth);
+		deleteDummySecurity(security);
+	}
+	
+	/**
+	 * Sample windows drawn over weekday bars should be full, followed by their future, and the same for the same seed.
+	 */
+	public void sampleSchedule() {
+		Security security = new Security("GGG", "XXX", SecurityType.STOCK);
+		String barWidth = BarInterval.DY_1;
+		// a monday
+		LocalDateTime first = LocalDateTime.of(2020, 1, 6, 0, 0);
+		int weeks = 12, sampleSize = 7;
+		System.out.println("testing sample schedule over " + weeks + " weeks of weekday trade bars");
+		
+		List<TradeBar> dummyBars = new ArrayList<>();
+		dbManager.getTransaction().begin();
+		if (dbManager.find(Security.class, security.getId()) == null) {
+			dbManager.persist(security);
+		}
+		for (int d=0; d<weeks*7; d++) {
+			if (d % 7 < 5) {
+				TradeBar bar = new TradeBar(security, first.plusDays(d), barWidth, d, d, d, d);
+				dbManager.persist(bar);
+				dummyBars.add(bar);
+			}
+		}
+		dbManager.getTransaction().commit();
+		BarSeriesCache.invalidate(security, barWidth);
+		
+		DbBarRepository barRepository = new DbBarRepository(dbManager);
+		BarSeries series = barRepository.getSeries(security, barWidth);
+		SampleSchedule[] schedules = new SampleSchedule[2];
+		for (int s=0; s<schedules.length; s++) {
+			schedules[s] = new SampleSchedule(
+				security, barWidth, sampleSize, 20, 1, 42, 
+				first, first.plusDays(weeks*7 - 1), series
+			);
+		}
+		if (!schedules[0].isCoverageAware() || !schedules[0].getEnds().equals(schedules[1].getEnds())) {
+			System.out.println("ERROR sample schedules of the same seed differ");
+		}
+		
+		MarketSynth marketSynth = new MarketSynth();
+		for (LocalDateTime end : schedules[0].getEnds()) {
+			MarketSample sample = new MarketSample(security, end, sampleSize, barWidth);
+			sample.prepare(barRepository, marketSynth);
+			sample.release();
+			
+			if (sample.getBars().size() != sampleSize || !sample.getFuture().getDatetime().equals(end)) {
+				System.out.println("ERROR scheduled sample " + sample + " is not a full window before its future");
+			}
+		}
+		
+		// a window ending on a friday should take the next monday as its future, from the cache or the database
+		boolean enabled = BarSeriesCache.isEnabled();
+		for (int c=0; c<2; c++) {
+			BarSeriesCache.setEnabled(c == 0);
+			MarketSample sample = new MarketSample(security, first.plusDays(7), first.plusDays(11), barWidth);
+			sample.prepare(dbManager, marketSynth);
+			sample.release();
+			
+			if (sample.getBars().size() != 5 || !sample.getFuture().getDatetime().equals(first.plusDays(14))) {
+				System.out.println("ERROR sample " + sample + " did not take the next bar as its future");
+			}
+		}
+		BarSeriesCache.setEnabled(enabled);
+		
+		// delete dummy trade bars
+		dbManager.getTransaction().begin();
+		for (TradeBar db : dummyBars) {
+			dbManager.remove(db);
+		}
+		dbManager.getTransaction().commit();
+		BarSeriesCache.invalidate(security, barWidth);
+		deleteDummySecurity(security);
+	}
+	
+	/**
+	 * Coverage intervals should merge, report the missing parts of a range, and read back as stored from both bar
+	 * repositories.
+	 */
+	public void barCoverage() {
+		Security security = new Security("EEE", "XXX", SecurityType.STOCK);
+		String barWidth = BarInterval.DY_1;
+		System.out.println("testing bar coverage");
+		
+		dbManager.getTransaction().begin();
+		if (dbManager.find(Security.class, security.getId()) == null) {
+			dbManager.persist(security);
+		}
+		dbManager.getTransaction().commit();
+		
+		IntervalSet expected = new IntervalSet();
+		long[][] added = {{100, 200}, {300, 400}, {200, 250}, {390, 500}, {600, 700}};
+		for (long[] interval : added) {
+			expected.add(interval[0], interval[1]);
+		}
+		List<long[]> missing = expected.missing(150, 650);
+		if (expected.size() != 3 || missing.size() != 2 
+			|| missing.get(0)[0] != 250 || missing.get(0)[1] != 300 
+			|| missing.get(1)[0] != 500 || missing.get(1)[1] != 600
+			|| !expected.covers(100, 250) || expected.covers(100, 260)) {
+			System.out.println("ERROR interval set " + expected + " is missing wrong intervals " + missing.size());
+		}
+		
+		try {
+			File dir = Files.createTempDirectory("marketsense_bars").toFile();
+			BarRepository[] repositories = {new DbBarRepository(dbManager), new FileBarRepository(dir)};
+			
+			for (BarRepository repository : repositories) {
+				for (long[] interval : added) {
+					repository.addCoverage(security, barWidth, interval[0], interval[1]);
+				}
+				
+				IntervalSet stored = repository.getCoverage(security, barWidth);
+				if (!stored.toString().equals(expected.toString())) {
+					System.out.println("ERROR " + repository.getClass().getSimpleName() + " stored coverage " + stored);
+				}
+			}
+			
+			for (File widthDir : dir.listFiles()) {
+				for (File file : widthDir.listFiles()) {
+					file.delete();
+				}
+				widthDir.delete();
+			}
+			dir.delete();
+		}
+		catch (IOException e) {
+			System.out.println("ERROR failed to create file bar store: " + e.getMessage());
+		}
+		
+		// delete dummy coverage
+		Query q = dbManager.createQuery(
+			"select c from " + BarCoverage.DB_TABLE + " c where c." + BarCoverage.DB_COMPCOL_ID + "." 
+			+ BarCoverageId.DB_COL_SECURITY + " = :security"
+		).setParameter("security", security);
+		
+		dbManager.getTransaction().begin();
+		for (Object coverage : q.getResultList()) {
+			dbManager.remove(coverage);
+		}
+		dbManager.getTransaction().commit();
+		deleteDummySecurity(security);
+	}
+	
+	/**
+	 * Bars loaded in bulk should read back as loaded, and loading stored bars again should replace them.
+	 */
+	public void bulkBarLoad() {
+		Security security = new Security("HHH", "XXX", SecurityType.STOCK);
+		String barWidth = BarInterval.DY_1;
+		LocalDateTime first = LocalDateTime.of(1990, 1, 1, 0, 0);
+		int barCount = 5000;
+		int replaceCount = 100;
+		System.out.println("testing bulk load of " + barCount + " dummy trade bars");
+		
+		dbManager.getTransaction().begin();
+		if (dbManager.find(Security.class, security.getId()) == null) {
+			dbManager.persist(security);
+		}
+		dbManager.getTransaction().commit();
+		
+		List<TradeBar> bars = new ArrayList<>(barCount);
+		for (int b=0; b<barCount; b++) {
+			bars.add(new TradeBar(security, first.plusDays(b), barWidth, b, b+2, b-1, b+1));
+		}
+		DbBarRepository repository = new DbBarRepository(dbManager);
+		repository.addBars(security, barWidth, bars);
+		
+		// replace the last bars and append as many
+		bars.clear();
+		for (int b=barCount-replaceCount; b<barCount+replaceCount; b++) {
+			bars.add(new TradeBar(security, first.plusDays(b), barWidth, 0, 0, 0, -b));
+		}
+		repository.addBars(security, barWidth, bars);
+		
+		BarSeries series = repository.getSeries(security, barWidth);
+		if (series.size() != barCount + replaceCount 
+			|| series.getClose(0) != 1 || series.getClose(barCount-replaceCount-1) != barCount-replaceCount
+			|| series.getClose(barCount-replaceCount) != replaceCount-barCount
+			|| series.getClose(barCount+replaceCount-1) != 1-barCount-replaceCount) {
+			System.out.println("ERROR bulk loaded series " + series + " does not match loaded bars");
+		}
+		System.out.println("DEBUG " + repository.getLoader().getSummary());
+		
+		// delete dummy trade bars, which the loader did not add to the persistence context
+		dbManager.getTransaction().begin();
+		dbManager.createQuery(
+			"delete from " + TradeBar.DB_TABLE + " t where t." + TradeBar.DB_COMPCOL_ID + "." 
+			+ TradeBarId.DB_COL_SECURITY + " = :security"
+		)
+		.setParameter("security", security)
+		.executeUpdate();
+		dbManager.getTransaction().commit();
+		BarSeriesCache.invalidate(security, barWidth);
+		deleteDummySecurity(security);
+	}
+	
+	/**
+	 * Bars loaded and read back by concurrent units of work, each with its own entity manager, should all be stored,
+	 * including when two of them load the same series.
+	 */
+	public void concurrentUnitsOfWork() {
+		int workers = 4;
+		int barCount = 1000;
+		String barWidth = BarInterval.DY_1;
+		LocalDateTime first = LocalDateTime.of(1990, 1, 1, 0, 0);
+		System.out.println("testing " + workers + " concurrent units of work");
+		
+		// every series is loaded by two workers
+		Security[] securities = new Security[workers / 2];
+		dbManager.getTransaction().begin();
+		for (int s=0; s<securities.length; s++) {
+			securities[s] = new Security("UW" + s, "XXX", SecurityType.STOCK);
+			if (dbManager.find(Security.class, securities[s].getId()) == null) {
+				dbManager.persist(securities[s]);
+			}
+		}
+		dbManager.getTransaction().commit();
+		
+		DbAccess dbAccess = new DbAccess(dbManager.getEntityManagerFactory(), workers);
+		DbBarRepository repository = new DbBarRepository(dbAccess);
+		ExecutorService loaders = Executors.newFixedThreadPool(workers);
+		List<CompletableFuture<Integer>> loads = new ArrayList<>(workers);
+		
+		for (int w=0; w<workers; w++) {
+			Security security = securities[w / 2];
+			
+			List<TradeBar> bars = new ArrayList<>(barCount);
+			for (int b=0; b<barCount; b++) {
+				bars.add(new TradeBar(security, first.plusDays(b), barWidth, b, b+2, b-1, b+1));
+			}
+			
+			loads.add(CompletableFuture.supplyAsync(() -> {
+				repository.addBars(security, barWidth, bars);
+				return repository.getSeries(security, barWidth).size();
+			}, loaders));
+		}
+		
+		for (int w=0; w<workers; w++) {
+			try {
+				int size = loads.get(w).join();
+				if (size != barCount) {
+					System.out.println("ERROR concurrent load of " + securities[w / 2] + " read back " + size + " bars");
+				}
+			}
+			catch (CompletionException e) {
+				System.out.println("ERROR concurrent load of " + securities[w / 2] + " failed: " + e.getCause());
+			}
+		}
+		loaders.shutdown();
+		
+		try {
+			dbAccess.shutdown(1, TimeUnit.MINUTES);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		// delete dummy trade bars
+		dbManager.getTransaction().begin();
+		for (Security security : securities) {
+			dbManager.createQuery(
+				"delete from " + TradeBar.DB_TABLE + " t where t." + TradeBar.DB_COMPCOL_ID + "." 
+				+ TradeBarId.DB_COL_SECURITY + " = :security"
+			)
+			.setParameter("security", security)
+			.executeUpdate();
+			BarSeriesCache.invalidate(security, barWidth);
+		}
+		dbManager.getTransaction().commit();
+		
+		for (Security security : securities) {
+			deleteDummySecurity(security);
+		}
+	}
+	
+	/**
+	 * Repeated lookups should reuse their query template and its cached query plan.
+	 */
+	public void queryTemplates() {
+		Security security = new Security("EEE", "XXX", SecurityType.STOCK);
+		LocalDateTime end = LocalDateTime.of(2020, 1, 1, 0, 0);
+		int lookups = 5;
+		System.out.println("testing query templates with " + lookups + " window lookups");
+		
+		dbManager.getTransaction().begin();
+		if (dbManager.find(Security.class, security.getId()) == null) {
+			dbManager.persist(security);
+		}
+		dbManager.getTransaction().commit();
+		
+		boolean statistics = QueryTemplates.isStatisticsEnabled(dbManager);
+		QueryTemplates.setStatisticsEnabled(dbManager, true);
+		BarSeries.loadWindow(dbManager, security, BarInterval.DY_1, null, end, 10);
+		long hits = QueryTemplates.getHits();
+		int templates = QueryTemplates.size();
+		
+		for (int l=0; l<lookups; l++) {
+			BarSeries.loadWindow(dbManager, security, BarInterval.DY_1, null, end.plusDays(l), 10);
+		}
+		
+		if (QueryTemplates.getHits() - hits != lookups || QueryTemplates.size() != templates) {
+			System.out.println("ERROR window lookups did not reuse their query template");
+		}
+		System.out.println("DEBUG " + QueryTemplates.getSummary(dbManager));
+		QueryTemplates.setStatisticsEnabled(dbManager, statistics);
+		
+		deleteDummySecurity(security);
+	}
+	
 	@Override
 	public void evaluate(boolean persistDummies) {
 		System.out.println("testing " + name);
@@ -225,6 +795,20 @@ public class TestDatabase extends Test {
 		
 //		dummySecurities(persistDummies,true);
 		
+		barSeriesCache();
+		
+		fileBarStore();
+		
+		sampleSchedule();
+		
+		barCoverage();
+		
+		bulkBarLoad();
+		
+		concurrentUnitsOfWork();
+		
+		queryTemplates();
+		
 		System.out.println(name + " testing complete");
 	}
 }
@@ -1,12 +1,24 @@
 package ogallagher.marketsense.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.sound.sampled.AudioInputStream;
 
 import ogallagher.marketsense.MarketSynth;
+import ogallagher.marketsense.PlaybackService;
+import ogallagher.marketsense.PlaybackService.PlayRequest;
+import ogallagher.marketsense.SoundMixer;
+import ogallagher.marketsense.SoundMixer.Voice;
+import ogallagher.marketsense.SynthSound;
 import ogallagher.marketsense.MarketSynth.AmplitudeFormula;
+import ogallagher.marketsense.MarketSynth.HarmonicEngine;
 import ogallagher.marketsense.MarketSynth.TimbreFormula;
+import ogallagher.marketsense.util.SineTable;
 
 /**
  * Test market data audio synthesizer.
@@ -35,9 +47,361 @@ public class TestMarketSynth extends Test {
 		marketSynth.playback(sound, 4);
 	}
 	
+	/**
+	 * Compare the shared sine wavetable against {@link Math#sin(double)} over a dense sweep of phases,
+	 * including negative and multi-cycle phases.
+	 */
+	public void sineTableError() {
+		int steps = 1000003;
+		double maxError = 0;
+		
+		for (int i=0; i<steps; i++) {
+			double cycles = -2 + 5.0 * i / steps;
+			double error = Math.abs(SineTable.sinCycles(cycles) - Math.sin(2 * Math.PI * cycles));
+			
+			if (error > maxError) {
+				maxError = error;
+			}
+		}
+		
+		if (maxError <= SineTable.MAX_ERROR) {
+			System.out.println("sine table max error " + maxError + " within bound " + SineTable.MAX_ERROR);
+		}
+		else {
+			System.out.println("ERROR sine table max error " + maxError + " exceeds bound " + SineTable.MAX_ERROR);
+		}
+	}
+	
+	/**
+	 * Synthesize the same market data twice, which should reuse every cached timbre period and produce the
+	 * same sound.
+	 */
+	public void timbreCacheReuse() {
+		float[] marketData = new float[] {3, 1, 4, 1, 5, 9, 2, 6};
+		
+		byte[] first = readSound(marketSynth.synthesize(marketData.clone(), true));
+		long missesBefore = marketSynth.getTimbreCache().getMissCount();
+		byte[] second = readSound(marketSynth.synthesize(marketData.clone(), true));
+		long missesAfter = marketSynth.getTimbreCache().getMissCount();
+		
+		if (missesAfter != missesBefore) {
+			System.out.println("ERROR repeated sound missed timbre cache " + (missesAfter-missesBefore) + " times");
+		}
+		else if (!Arrays.equals(first, second)) {
+			System.out.println("ERROR repeated sound from timbre cache differs from original");
+		}
+		else {
+			System.out.println("timbre cache reused for repeated sound: " + marketSynth.getTimbreCache());
+		}
+	}
+	
+	/**
+	 * Render the same market data buffered and streamed, reading the stream in odd sized chunks and again
+	 * after a reset, which should all produce the same sound.
+	 */
+	public void streamingMatchesBuffered() {
+		float[] marketData = new float[] {2, 7, 1, 8, 2, 8, 1, 8, 2, 8};
+		
+		byte[] buffered = readSound(marketSynth.synthesize(marketData.clone(), true));
+		
+		marketSynth.setStreaming(true);
+		AudioInputStream stream = marketSynth.synthesize(marketData.clone(), true);
+		marketSynth.setStreaming(false);
+		
+		byte[] streamed = new byte[buffered.length];
+		byte[] chunk = new byte[1001];
+		try {
+			int total = 0;
+			int newBytes = stream.read(chunk);
+			while (newBytes != -1) {
+				java.lang.System.arraycopy(chunk, 0, streamed, total, newBytes);
+				total += newBytes;
+				newBytes = stream.read(chunk);
+			}
+			
+			if (total != buffered.length || !Arrays.equals(buffered, streamed)) {
+				System.out.println("ERROR streamed sound of " + total + " bytes differs from buffered sound");
+				return;
+			}
+			
+			stream.reset();
+			if (!Arrays.equals(buffered, readSound(stream))) {
+				System.out.println("ERROR streamed sound differs from buffered sound after reset");
+				return;
+			}
+			
+			System.out.println("streamed sound matches buffered sound");
+		}
+		catch (IOException e) {
+			System.out.println("ERROR failed to read streamed sound: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Hold two pooled sounds at once, which should not share data, then release one and synthesize again,
+	 * which should reuse its buffer.
+	 */
+	public void bufferPoolReuse() {
+		float[] marketDataA = new float[] {1, 4, 1, 4, 2, 1, 3, 5};
+		float[] marketDataB = new float[] {5, 3, 1, 2, 4, 1, 4, 1};
+		
+		byte[] expectedA = readSound(marketSynth.synthesize(marketDataA.clone(), true));
+		byte[] expectedB = readSound(marketSynth.synthesize(marketDataB.clone(), true));
+		
+		SynthSound soundA = marketSynth.synthesizeSound(marketDataA.clone(), true);
+		SynthSound soundB = marketSynth.synthesizeSound(marketDataB.clone(), true);
+		
+		if (!Arrays.equals(expectedA, readSound(soundA.getStream())) || !Arrays.equals(expectedB, readSound(soundB.getStream()))) {
+			System.out.println("ERROR held pooled sounds differ from unpooled sounds");
+			return;
+		}
+		
+		long reusesBefore = marketSynth.getBufferPool().getReuseCount();
+		soundA.release();
+		SynthSound soundC = marketSynth.synthesizeSound(marketDataB.clone(), true);
+		long reusesAfter = marketSynth.getBufferPool().getReuseCount();
+		
+		if (reusesAfter == reusesBefore) {
+			System.out.println("ERROR released sound buffer was not reused");
+		}
+		else if (!Arrays.equals(expectedB, readSound(soundC.getStream()))) {
+			System.out.println("ERROR sound in reused buffer differs from unpooled sound");
+		}
+		else {
+			System.out.println("sound buffers reused after release: " + marketSynth.getBufferPool());
+		}
+		
+		soundB.release();
+		soundC.release();
+	}
+	
+	/**
+	 * Render a batch of sounds in parallel and a same sized batch one at a time, comparing elapsed times, and
+	 * check that the parallel sounds match those rendered one at a time.
+	 * 
+	 * Each batch has its own random data, so that neither benefits from timbre periods cached by the other.
+	 */
+	public void batchSynthesisSpeedup() {
+		int batchSize = 48;
+		int noteCount = 100;
+		
+		List<float[]> parallelData = randomBatch(batchSize, noteCount);
+		List<float[]> serialData = randomBatch(batchSize, noteCount);
+		
+		// warm up
+		for (SynthSound sound : marketSynth.synthesizeBatch(randomBatch(8, noteCount), false)) {
+			sound.release();
+		}
+		
+		long start = java.lang.System.nanoTime();
+		List<SynthSound> parallelSounds = marketSynth.synthesizeBatch(parallelData, false);
+		long parallelNanos = java.lang.System.nanoTime() - start;
+		
+		start = java.lang.System.nanoTime();
+		for (float[] marketData : serialData) {
+			marketSynth.synthesizeSound(marketData, false).release();
+		}
+		long serialNanos = java.lang.System.nanoTime() - start;
+		
+		boolean match = true;
+		for (int i=0; i<batchSize && match; i++) {
+			byte[] expected = readSound(marketSynth.synthesize(parallelData.get(i), false));
+			match = Arrays.equals(expected, readSound(parallelSounds.get(i).getStream()));
+		}
+		for (SynthSound sound : parallelSounds) {
+			sound.release();
+		}
+		
+		if (!match) {
+			System.out.println("ERROR sounds from parallel batch differ from sounds rendered one at a time");
+		}
+		else {
+			System.out.println(
+				"batch of " + batchSize + " sounds rendered in " + parallelNanos/1000000 + " ms parallel vs " +
+				serialNanos/1000000 + " ms serial, speedup=" + String.format("%.2f", (double) serialNanos / parallelNanos) +
+				" with parallelism=" + marketSynth.getBatchPool().getParallelism()
+			);
+		}
+	}
+	
+	/**
+	 * Render harmonic sounds of increasing note counts with both harmonic engines, which should differ by at most
+	 * 1 sample value, and compare their elapsed times.
+	 */
+	public void spectralMatchesAdditive() {
+		TimbreFormula[] formulas = new TimbreFormula[] {TimbreFormula.HARMONIC_REDOI, TimbreFormula.MULT_HARMROI};
+		int[] noteCounts = new int[] {7, 100, 500};
+		
+		for (TimbreFormula formula : formulas) {
+			for (int noteCount : noteCounts) {
+				float[] marketData = randomBatch(1, noteCount).get(0);
+				
+				MarketSynth additiveSynth = new MarketSynth(formula, AmplitudeFormula.CONST);
+				MarketSynth spectralSynth = new MarketSynth(formula, AmplitudeFormula.CONST);
+				spectralSynth.setHarmonicEngine(HarmonicEngine.SPECTRAL);
+				
+				long start = java.lang.System.nanoTime();
+				byte[] additive = readSound(additiveSynth.synthesize(marketData.clone(), false));
+				long additiveNanos = java.lang.System.nanoTime() - start;
+				
+				start = java.lang.System.nanoTime();
+				byte[] spectral = readSound(spectralSynth.synthesize(marketData.clone(), false));
+				long spectralNanos = java.lang.System.nanoTime() - start;
+				
+				// compare big endian 16 bit samples
+				int maxDiff = 0;
+				for (int b=0; b<additive.length; b+=2) {
+					int a = (additive[b] << 8) | (additive[b+1] & 0xff);
+					int f = (spectral[b] << 8) | (spectral[b+1] & 0xff);
+					maxDiff = Math.max(maxDiff, Math.abs(a - f));
+				}
+				
+				if (maxDiff > 1) {
+					System.out.println("ERROR " + formula + " spectral sound of " + noteCount + " notes differs from additive by " + maxDiff);
+				}
+				else {
+					System.out.println(
+						formula + " spectral sound of " + noteCount + " notes within " + maxDiff + " of additive, in " + 
+						spectralNanos/1000000 + " ms vs " + additiveNanos/1000000 + " ms"
+					);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Play a sound until cancelled, then replace it with another, which should cancel the first and play the
+	 * second, and report the measured press-to-sound latency.
+	 */
+	public void playbackReplace() {
+		PlaybackService playbackService = marketSynth.getPlaybackService();
+		
+		PlayRequest looping = playbackService.play(marketSynth.synthesize(null, false), PlaybackService.REPEAT_FOREVER);
+		PlayRequest replacement = marketSynth.playback(marketSynth.synthesize(null, false), 1);
+		
+		try {
+			long deadline = java.lang.System.currentTimeMillis() + 10000;
+			while (!replacement.isFinished() && java.lang.System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			// allow the end of the sound to reach the speakers
+			Thread.sleep(100);
+		}
+		catch (InterruptedException e) {
+			System.out.println("WARNING interrupted waiting for playback");
+		}
+		
+		if (!playbackService.isLineOpen()) {
+			System.out.println("WARNING speakers not connected; skipping playback replace test");
+		}
+		else if (!looping.isCancelled() || !looping.isFinished()) {
+			System.out.println("ERROR replaced sound was not cancelled");
+		}
+		else if (!replacement.isFinished() || replacement.isCancelled()) {
+			System.out.println("ERROR replacement sound did not finish playing");
+		}
+		else if (replacement.getLatencyNanos() == -1) {
+			System.out.println("ERROR replacement sound latency not measured");
+		}
+		else {
+			System.out.println("replacement sound played with latency " + replacement.getLatencyNanos()/1e6 + " ms: " + playbackService);
+		}
+	}
+	
+	/**
+	 * Mix two sounds panned hard left and hard right, which should each come out of one channel only.
+	 */
+	public void mixerPanning() {
+		SoundMixer mixer = new SoundMixer(marketSynth.getAudioFormat());
+		int frames = 256;
+		
+		byte[] soundLeft = readSound(marketSynth.synthesize(randomBatch(1, 10).get(0), false));
+		byte[] soundRight = readSound(marketSynth.synthesize(randomBatch(1, 10).get(0), false));
+		Voice voiceLeft = mixer.addVoice(
+			new AudioInputStream(new ByteArrayInputStream(soundLeft), marketSynth.getAudioFormat(), soundLeft.length/2), 
+			SoundMixer.PAN_LEFT, 1, 1
+		);
+		Voice voiceRight = mixer.addVoice(
+			new AudioInputStream(new ByteArrayInputStream(soundRight), marketSynth.getAudioFormat(), soundRight.length/2), 
+			SoundMixer.PAN_RIGHT, 1, 1
+		);
+		
+		try {
+			// mixing offline in place of the mixer thread, so wait for the feeders
+			while (voiceLeft.getBuffered() < frames || voiceRight.getBuffered() < frames) {
+				Thread.sleep(1);
+			}
+		}
+		catch (InterruptedException e) {
+			System.out.println("WARNING interrupted waiting for mixer voices");
+		}
+		
+		byte[] output = new byte[frames * mixer.getOutputFormat().getFrameSize()];
+		mixer.mix(output, frames);
+		mixer.stopAll();
+		
+		// compare big endian 16 bit samples of each channel
+		int maxDiff = 0;
+		for (int f=0; f<frames; f++) {
+			int left = (output[f*4] << 8) | (output[f*4+1] & 0xff);
+			int right = (output[f*4+2] << 8) | (output[f*4+3] & 0xff);
+			int expectedLeft = (soundLeft[f*2] << 8) | (soundLeft[f*2+1] & 0xff);
+			int expectedRight = (soundRight[f*2] << 8) | (soundRight[f*2+1] & 0xff);
+			
+			maxDiff = Math.max(maxDiff, Math.max(Math.abs(left - expectedLeft), Math.abs(right - expectedRight)));
+		}
+		
+		if (maxDiff > 1) {
+			System.out.println("ERROR panned voices differ from their sounds by " + maxDiff);
+		}
+		else {
+			System.out.println("panned voices within " + maxDiff + " of their sounds in stereo mix");
+		}
+	}
+	
+	private static List<float[]> randomBatch(int batchSize, int noteCount) {
+		List<float[]> batch = new ArrayList<>(batchSize);
+		
+		for (int i=0; i<batchSize; i++) {
+			float[] marketData = new float[noteCount];
+			for (int d=0; d<noteCount; d++) {
+				marketData[d] = (float) Math.random();
+			}
+			batch.add(marketData);
+		}
+		
+		return batch;
+	}
+	
+	private static byte[] readSound(AudioInputStream sound) {
+		byte[] data = new byte[(int) (sound.getFrameLength() * sound.getFormat().getFrameSize())];
+		
+		try {
+			int total = 0;
+			while (total < data.length) {
+				int newBytes = sound.read(data, total, data.length-total);
+				if (newBytes == -1) break;
+				total += newBytes;
+			}
+		}
+		catch (IOException e) {
+			System.out.println("ERROR failed to read sound: " + e.getMessage());
+		}
+		
+		return data;
+	}
+	
 	@Override
 	public void evaluate(boolean persistDummies) {
 		System.out.println("testing MarketSynth");
+		sineTableError();
+		timbreCacheReuse();
+		streamingMatchesBuffered();
+		bufferPoolReuse();
+		batchSynthesisSpeedup();
+		spectralMatchesAdditive();
+		playbackReplace();
+		mixerPanning();
 		dummySound(persistDummies);
 	}
 }
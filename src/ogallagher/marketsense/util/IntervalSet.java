@@ -0,0 +1,110 @@
+package ogallagher.marketsense.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Set of half-open {@code [start, end)} intervals of {@code long} values (ex. epoch seconds), kept as disjoint
+ * intervals in order. Adding an interval merges it with any that overlap or touch it.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class IntervalSet {
+	/**
+	 * Interval ends by start.
+	 */
+	private TreeMap<Long,Long> intervals = new TreeMap<>();
+	
+	/**
+	 * @param start Interval start, inclusive.
+	 * @param end Interval end, exclusive. An interval that does not end after it starts is ignored.
+	 */
+	public void add(long start, long end) {
+		if (end <= start) {
+			return;
+		}
+		
+		Map.Entry<Long,Long> before = intervals.floorEntry(start);
+		if (before != null && before.getValue() >= start) {
+			start = before.getKey();
+			end = Math.max(end, before.getValue());
+		}
+		
+		Map.Entry<Long,Long> next;
+		while ((next = intervals.ceilingEntry(start)) != null && next.getKey() <= end) {
+			end = Math.max(end, next.getValue());
+			intervals.remove(next.getKey());
+		}
+		
+		intervals.put(start, end);
+	}
+	
+	/**
+	 * @param start
+	 * @param end
+	 * 
+	 * @return The sub-intervals of {@code [start, end)} not in this set, in order.
+	 */
+	public List<long[]> missing(long start, long end) {
+		List<long[]> missing = new ArrayList<>();
+		long cursor = start;
+		
+		Map.Entry<Long,Long> before = intervals.floorEntry(start);
+		if (before != null) {
+			cursor = Math.max(cursor, before.getValue());
+		}
+		
+		for (Map.Entry<Long,Long> interval : intervals.subMap(start, false, end, false).entrySet()) {
+			if (interval.getKey() > cursor) {
+				missing.add(new long[] {cursor, interval.getKey()});
+			}
+			cursor = Math.max(cursor, interval.getValue());
+		}
+		
+		if (cursor < end) {
+			missing.add(new long[] {cursor, end});
+		}
+		
+		return missing;
+	}
+	
+	/**
+	 * @return Whether {@code [start, end)} is entirely in this set.
+	 */
+	public boolean covers(long start, long end) {
+		return missing(start, end).isEmpty();
+	}
+	
+	/**
+	 * @return Every interval as {@code {start, end}}, in order.
+	 */
+	public List<long[]> getIntervals() {
+		List<long[]> all = new ArrayList<>(intervals.size());
+		for (Map.Entry<Long,Long> interval : intervals.entrySet()) {
+			all.add(new long[] {interval.getKey(), interval.getValue()});
+		}
+		return all;
+	}
+	
+	public boolean isEmpty() {
+		return intervals.isEmpty();
+	}
+	
+	public int size() {
+		return intervals.size();
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder("IntervalSet(");
+		for (Map.Entry<Long,Long> interval : intervals.entrySet()) {
+			if (str.length() > 12) {
+				str.append(", ");
+			}
+			str.append('[').append(interval.getKey()).append(", ").append(interval.getValue()).append(')');
+		}
+		return str.append(')').toString();
+	}
+}
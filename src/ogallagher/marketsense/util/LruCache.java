@@ -0,0 +1,169 @@
+package ogallagher.marketsense.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Bounded least-recently-used cache, where the bound is a total weight (ex. bytes) rather than an entry count.
+ * When a new value pushes the total weight past the maximum, the least recently used entries are evicted until
+ * it fits again.</p>
+ * 
+ * <p>Keeps hit, miss, and eviction counters. All methods are synchronized, so one cache can be shared between
+ * threads.</p>
+ * 
+ * @param <K> Key type, which must implement {@code equals} and {@code hashCode}.
+ * @param <V> Value type.
+ * 
+ * @since 2026-10-18
+ */
+public class LruCache<K,V> {
+	private LinkedHashMap<K,V> entries;
+	private Weigher<V> weigher;
+	private long maxWeight;
+	private long weight = 0;
+	
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+	
+	/**
+	 * @param maxWeight Maximum total weight of all values.
+	 * @param weigher Determines the weight of each value.
+	 */
+	public LruCache(long maxWeight, Weigher<V> weigher) {
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+		// access order, so iteration begins with the least recently used
+		entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+	
+	/**
+	 * @param key
+	 * @return The cached value, or {@code null} if not present.
+	 */
+	public synchronized V get(K key) {
+		V value = entries.get(key);
+		
+		if (value != null) {
+			hitCount++;
+		}
+		else {
+			missCount++;
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Add or replace a value. A value heavier than the whole cache is not stored.
+	 * 
+	 * @param key
+	 * @param value
+	 */
+	public synchronized void put(K key, V value) {
+		long valueWeight = weigher.weigh(value);
+		
+		V old = entries.remove(key);
+		if (old != null) {
+			weight -= weigher.weigh(old);
+		}
+		
+		if (valueWeight <= maxWeight) {
+			entries.put(key, value);
+			weight += valueWeight;
+			
+			evict();
+		}
+	}
+	
+	/**
+	 * @param key
+	 * @return The removed value, or {@code null} if not present.
+	 */
+	public synchronized V remove(K key) {
+		V value = entries.remove(key);
+		
+		if (value != null) {
+			weight -= weigher.weigh(value);
+		}
+		
+		return value;
+	}
+	
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+	
+	/**
+	 * Remove least recently used entries until within {@link #maxWeight}.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<K,V>> eldest = entries.entrySet().iterator();
+		
+		while (weight > maxWeight && eldest.hasNext()) {
+			Map.Entry<K,V> entry = eldest.next();
+			weight -= weigher.weigh(entry.getValue());
+			eldest.remove();
+			evictionCount++;
+			
+			onEvict(entry.getKey(), entry.getValue());
+		}
+	}
+	
+	/**
+	 * Called for each entry evicted to make room, while the cache is locked. Does nothing by default.
+	 * 
+	 * @param key
+	 * @param value
+	 */
+	protected void onEvict(K key, V value) {}
+	
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	public synchronized long getWeight() {
+		return weight;
+	}
+	
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+	
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+	
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+	
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+	
+	/**
+	 * @return Proportion of lookups that were hits, between 0 and 1.
+	 */
+	public synchronized double getHitRate() {
+		long lookups = hitCount + missCount;
+		return lookups == 0 ? 0 : (double) hitCount / lookups;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return "LruCache(size=" + entries.size() + ", weight=" + weight + "/" + maxWeight +
+			", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + ")";
+	}
+	
+	/**
+	 * Determines the weight of a cached value.
+	 * 
+	 * @param <V> Value type.
+	 */
+	public static interface Weigher<V> {
+		public long weigh(V value);
+	}
+}
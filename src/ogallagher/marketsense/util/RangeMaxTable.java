@@ -0,0 +1,59 @@
+package ogallagher.marketsense.util;
+
+/**
+ * <p>Sparse table answering the maximum of any range of a fixed {@code float} array in constant time.</p>
+ * 
+ * <p>Level {@code k} holds the maximum of every run of {@code 2^k} values, so a range is covered by the two
+ * overlapping runs of the largest power of 2 that fits in it. Building takes {@code O(n log n)} time and
+ * {@code n log n} floats of memory.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class RangeMaxTable {
+	/**
+	 * {@code levels[k][i]} is the maximum of {@code values[i .. i+2^k)}.
+	 */
+	private float[][] levels;
+	
+	/**
+	 * @param values Values to index, which are not copied and must not change afterward.
+	 */
+	public RangeMaxTable(float[] values) {
+		int n = values.length;
+		int levelCount = n == 0 ? 1 : 32 - Integer.numberOfLeadingZeros(n);
+		levels = new float[levelCount][];
+		levels[0] = values;
+		
+		for (int k=1; k<levelCount; k++) {
+			float[] below = levels[k-1];
+			int half = 1 << (k-1);
+			float[] level = new float[n - (1 << k) + 1];
+			
+			for (int i=0; i<level.length; i++) {
+				level[i] = Math.max(below[i], below[i + half]);
+			}
+			
+			levels[k] = level;
+		}
+	}
+	
+	/**
+	 * @param from First index, inclusive.
+	 * @param to Last index, exclusive.
+	 * 
+	 * @return Maximum of the values in the range, or {@code 0} if it is empty.
+	 */
+	public float max(int from, int to) {
+		if (to <= from) {
+			return 0;
+		}
+		
+		int k = 31 - Integer.numberOfLeadingZeros(to - from);
+		float[] level = levels[k];
+		return Math.max(level[from], level[to - (1 << k)]);
+	}
+	
+	public int size() {
+		return levels[0].length;
+	}
+}
@@ -0,0 +1,90 @@
+package ogallagher.marketsense.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Bounded ring buffer of {@code float} samples, for exactly one producer thread and one consumer thread.</p>
+ * 
+ * <p>Neither side locks or allocates. The producer only advances the write index, and the consumer only advances
+ * the read index, each published with an ordered store so the other side sees the samples before the index
+ * that covers them.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class SpscRing {
+	private float[] samples;
+	private int mask;
+	
+	/**
+	 * Total samples written, only advanced by the producer.
+	 */
+	private AtomicLong writeIndex = new AtomicLong(0);
+	/**
+	 * Total samples read, only advanced by the consumer.
+	 */
+	private AtomicLong readIndex = new AtomicLong(0);
+	
+	/**
+	 * @param capacity Maximum number of samples held, rounded up to a power of 2.
+	 */
+	public SpscRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		samples = new float[size];
+		mask = size - 1;
+	}
+	
+	public int getCapacity() {
+		return samples.length;
+	}
+	
+	/**
+	 * @return Number of samples available to read. Exact only when called from the producer or consumer.
+	 */
+	public int size() {
+		return (int) (writeIndex.get() - readIndex.get());
+	}
+	
+	/**
+	 * Write as many samples as fit. Producer only.
+	 * 
+	 * @param src
+	 * @param offset
+	 * @param length
+	 * 
+	 * @return Number of samples written, which may be less than {@code length} if the ring is full.
+	 */
+	public int write(float[] src, int offset, int length) {
+		long write = writeIndex.get();
+		int free = samples.length - (int) (write - readIndex.get());
+		int count = Math.min(free, length);
+		
+		for (int i=0; i<count; i++) {
+			samples[(int) (write + i) & mask] = src[offset + i];
+		}
+		
+		writeIndex.lazySet(write + count);
+		return count;
+	}
+	
+	/**
+	 * Read as many samples as available. Consumer only.
+	 * 
+	 * @param dest
+	 * @param offset
+	 * @param length
+	 * 
+	 * @return Number of samples read, which may be less than {@code length} if the ring is empty.
+	 */
+	public int read(float[] dest, int offset, int length) {
+		long read = readIndex.get();
+		int available = (int) (writeIndex.get() - read);
+		int count = Math.min(available, length);
+		
+		for (int i=0; i<count; i++) {
+			dest[offset + i] = samples[(int) (read + i) & mask];
+		}
+		
+		readIndex.lazySet(read + count);
+		return count;
+	}
+}
@@ -0,0 +1,113 @@
+package ogallagher.marketsense.util;
+
+/**
+ * <p>Token bucket rate limiter, for keeping calls to a rate limited service (ex. the market data api) within its
+ * allowance. Tokens refill continuously at a fixed rate up to a capacity, and each call first takes a token,
+ * waiting for one if the bucket is empty.</p>
+ * 
+ * <p>All methods are synchronized, so one bucket can be shared between threads, which then take turns.</p>
+ * 
+ * @since 2026-10-18
+ */
+public class TokenBucket {
+	private static final long NANOS_PER_MIN = 60L * 1000000000L;
+	
+	private double capacity;
+	private double tokensPerNano;
+	
+	private double tokens;
+	/**
+	 * Time of the last refill, from {@link System#nanoTime()}.
+	 */
+	private long refilled;
+	
+	private long acquired = 0;
+	private long waitNanos = 0;
+	
+	/**
+	 * @param capacity Maximum tokens, being the largest burst of calls allowed without waiting.
+	 * @param tokensPerMinute Refill rate.
+	 */
+	public TokenBucket(int capacity, double tokensPerMinute) {
+		this.capacity = capacity;
+		tokensPerNano = tokensPerMinute / NANOS_PER_MIN;
+		
+		// begin full
+		tokens = capacity;
+		refilled = System.nanoTime();
+	}
+	
+	private void refill() {
+		long now = System.nanoTime();
+		tokens = Math.min(capacity, tokens + (now - refilled) * tokensPerNano);
+		refilled = now;
+	}
+	
+	/**
+	 * Take a token, waiting until one is available.
+	 * 
+	 * @throws InterruptedException If interrupted while waiting, in which case no token is taken.
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		long start = System.nanoTime();
+		refill();
+		
+		while (tokens < 1) {
+			long nanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+			// releases the bucket to other threads while waiting
+			wait(Math.max(nanos / 1000000, 1));
+			refill();
+		}
+		
+		tokens--;
+		acquired++;
+		waitNanos += System.nanoTime() - start;
+	}
+	
+	/**
+	 * @return Whether a token was available and taken, without waiting.
+	 */
+	public synchronized boolean tryAcquire() {
+		refill();
+		
+		if (tokens >= 1) {
+			tokens--;
+			acquired++;
+			return true;
+		}
+		else {
+			return false;
+		}
+	}
+	
+	/**
+	 * Empty the bucket, for when the service reports the allowance was exceeded anyway, so that every thread waits
+	 * for a refill.
+	 */
+	public synchronized void drain() {
+		refill();
+		tokens = Math.min(tokens, 0);
+	}
+	
+	public synchronized double getTokens() {
+		refill();
+		return tokens;
+	}
+	
+	public synchronized long getAcquired() {
+		return acquired;
+	}
+	
+	/**
+	 * @return Total time spent waiting for tokens, in milliseconds.
+	 */
+	public synchronized long getWaitMillis() {
+		return waitNanos / 1000000;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return "TokenBucket(capacity=" + capacity + ", perMinute=" + (tokensPerNano * NANOS_PER_MIN) +
+			", acquired=" + acquired + ", waited=" + getWaitMillis() + "ms)";
+	}
+}